@@ -0,0 +1,99 @@
+package org.eurekaclinical.datastore;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOError;
+import java.nio.ByteBuffer;
+
+/**
+ * A data store whose keys and values are bytes that the caller has already
+ * serialized. The data store does not convert them. In addition to the
+ * {@link java.util.Map} methods, it defines methods that take 
+ * {@link ByteBuffer}s, and methods that write and delete without reading
+ * the previous value. Methods that take a {@link ByteBuffer} read its
+ * remaining bytes without changing its position.
+ *
+ * @author Andrew Post
+ */
+public interface BytesDataStore extends DataStore<byte[], byte[]> {
+
+    /**
+     * Returns the value corresponding to the given key.
+     *
+     * @param key a key.
+     * @return the value corresponding to the given key, or <code>null</code>
+     * if there is none.
+     *
+     * @throws IOError if an error occurs getting the value corresponding to
+     * the given key.
+     */
+    ByteBuffer get(ByteBuffer key);
+
+    /**
+     * Puts the given key-value pair into the data store, without reading 
+     * the value that it replaces.
+     *
+     * @param key a key.
+     * @param value a value.
+     *
+     * @throws IOError if an error occurs while adding the key-value pair to
+     * the data store.
+     */
+    void set(byte[] key, byte[] value);
+
+    /**
+     * Puts the given key-value pair into the data store, without reading 
+     * the value that it replaces.
+     *
+     * @param key a key.
+     * @param value a value.
+     *
+     * @throws IOError if an error occurs while adding the key-value pair to
+     * the data store.
+     */
+    void set(ByteBuffer key, ByteBuffer value);
+
+    /**
+     * Removes the mapping for this key from this map if present, without 
+     * reading the value that is removed.
+     *
+     * @param key a key.
+     * @return <code>true</code> if there was a mapping for the key,
+     * <code>false</code> if not.
+     *
+     * @throws IOError if an error occurred while attempting to remove a
+     * mapping.
+     */
+    boolean delete(byte[] key);
+
+    /**
+     * Removes the mapping for this key from this map if present, without 
+     * reading the value that is removed.
+     *
+     * @param key a key.
+     * @return <code>true</code> if there was a mapping for the key,
+     * <code>false</code> if not.
+     *
+     * @throws IOError if an error occurred while attempting to remove a
+     * mapping.
+     */
+    boolean delete(ByteBuffer key);
+}
@@ -23,7 +23,9 @@ package org.eurekaclinical.datastore;
 import java.util.Map;
 import java.io.IOError;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * Represents a data store, which can be either temporary or persistent. It can
@@ -176,5 +178,107 @@ public interface DataStore<K, V> extends Map<K, V>, AutoCloseable {
      */
     @Override
     V remove(Object key);
-    
+
+
+    /**
+     * Returns a stream of the data store's key-value pairs. The stream 
+     * should be closed if it is not consumed entirely, so that the data 
+     * store can release the resources that it holds. This implementation
+     * streams {@link #entrySet() }.
+     * 
+     * @return a stream of key-value pairs.
+     * 
+     * @throws IOError if an error occurs reading the data store.
+     */
+    default Stream<Map.Entry<K, V>> stream() {
+        return entrySet().stream();
+    }
+
+    /**
+     * Returns a stream of the data store's keys. The stream should be 
+     * closed if it is not consumed entirely. This implementation streams
+     * {@link #keySet() }.
+     * 
+     * @return a stream of keys.
+     * 
+     * @throws IOError if an error occurs reading the data store.
+     */
+    default Stream<K> keyStream() {
+        return keySet().stream();
+    }
+
+    /**
+     * Returns a stream of the data store's values. The stream should be 
+     * closed if it is not consumed entirely. This implementation streams
+     * {@link #values() }.
+     * 
+     * @return a stream of values.
+     * 
+     * @throws IOError if an error occurs reading the data store.
+     */
+    default Stream<V> valueStream() {
+        return values().stream();
+    }
+
+    /**
+     * Returns the values of the given keys. This implementation calls
+     * {@link #get(java.lang.Object) } for each key.
+     * 
+     * @param keys the keys.
+     * @return a map from each key that is in the data store to its value.
+     * 
+     * @throws IOError if an error occurs getting the values.
+     */
+    default Map<K, V> getAll(Collection<? extends K> keys) {
+        Map<K, V> result = new HashMap<>();
+        for (K key : keys) {
+            V value = get(key);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes the given keys from the data store.
+     * This implementation calls {@link #remove(java.lang.Object) } for each 
+     * key.
+     * 
+     * @param keys the keys to remove.
+     * @return the number of keys that were in the data store and were 
+     * removed.
+     * 
+     * @throws IOError if an error occurred while removing the keys.
+     */
+    default int removeAll(Collection<? extends K> keys) {
+        int count = 0;
+        for (K key : keys) {
+            if (remove(key) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Applies the puts and removes in the given batch, in order. Data stores
+     * may apply large batches in several steps, so if an error occurs, some
+     * operations may have been applied and others not. This implementation
+     * calls {@link #put(java.lang.Object, java.lang.Object) } and 
+     * {@link #remove(java.lang.Object) } for each operation.
+     * 
+     * @param batch a batch of operations.
+     * 
+     * @throws IOError if an error occurs while applying the batch.
+     */
+    default void write(WriteBatch<K, V> batch) {
+        for (WriteBatch.Operation<K, V> operation : batch.getOperations()) {
+            if (operation.isRemove()) {
+                remove(operation.getKey());
+            } else {
+                put(operation.getKey(), operation.getValue());
+            }
+        }
+    }
 }
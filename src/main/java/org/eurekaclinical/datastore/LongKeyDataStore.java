@@ -0,0 +1,82 @@
+package org.eurekaclinical.datastore;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOError;
+
+/**
+ * A data store with numeric keys. In addition to the {@link java.util.Map}
+ * methods, which take {@link Long} keys, it defines primitive 
+ * <code>long</code> overloads of the most frequently used methods that avoid
+ * boxing the key.
+ *
+ * @param <V> the value type to store.
+ * 
+ * @author Andrew Post
+ */
+public interface LongKeyDataStore<V> extends DataStore<Long, V> {
+
+    /**
+     * Returns the value corresponding to the given key.
+     *
+     * @param key a key.
+     * @return the value corresponding to the given key, or <code>null</code>
+     * if there is none.
+     *
+     * @throws IOError if an error occurs getting the value corresponding to
+     * the given key.
+     */
+    V get(long key);
+
+    /**
+     * Puts the given key-value pair into the data store.
+     *
+     * @param key a key.
+     * @param value a value.
+     * @return the value that used to be in the data store, or 
+     * <code>null</code> if there was not one previously.
+     *
+     * @throws IOError if an error occurs while adding the key-value pair to
+     * the data store.
+     */
+    V put(long key, V value);
+
+    /**
+     * Removes the mapping for this key from this map if present.
+     *
+     * @param key a key.
+     * @return the removed mapping, if any.
+     *
+     * @throws IOError if an error occurred while attempting to remove a
+     * mapping.
+     */
+    V remove(long key);
+
+    /**
+     * Returns whether the given key is in the data store.
+     *
+     * @param key a key.
+     * @return <code>true</code> or <code>false</code>.
+     *
+     * @throws IOError if an error occurs while checking the data store.
+     */
+    boolean containsKey(long key);
+}
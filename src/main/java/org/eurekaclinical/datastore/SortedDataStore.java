@@ -0,0 +1,80 @@
+package org.eurekaclinical.datastore;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOError;
+import java.util.SortedMap;
+
+/**
+ * A data store whose keys are kept in order, so that a range of keys can 
+ * be read without reading the rest of the data store. The range views that
+ * are returned by {@link #subMap(java.lang.Object, java.lang.Object) }, 
+ * {@link #headMap(java.lang.Object) }, {@link #tailMap(java.lang.Object) }
+ * and their overloads with inclusive and exclusive bounds are backed by 
+ * the data store, like its other collection views.
+ *
+ * @param <K> the key type to store.
+ * @param <V> the value type to store.
+ * 
+ * @author Andrew Post
+ */
+public interface SortedDataStore<K, V> extends DataStore<K, V>, 
+        SortedMap<K, V> {
+
+    /**
+     * Returns a view of the keys from <code>fromKey</code> to 
+     * <code>toKey</code>.
+     *
+     * @param fromKey the low key.
+     * @param fromInclusive whether the low key is in the view.
+     * @param toKey the high key.
+     * @param toInclusive whether the high key is in the view.
+     * @return the view.
+     *
+     * @throws IOError if an error occurs while creating the view.
+     */
+    SortedMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, 
+            boolean toInclusive);
+
+    /**
+     * Returns a view of the keys lower than <code>toKey</code>, optionally
+     * including it.
+     *
+     * @param toKey the high key.
+     * @param inclusive whether the high key is in the view.
+     * @return the view.
+     *
+     * @throws IOError if an error occurs while creating the view.
+     */
+    SortedMap<K, V> headMap(K toKey, boolean inclusive);
+
+    /**
+     * Returns a view of the keys higher than <code>fromKey</code>, 
+     * optionally including it.
+     *
+     * @param fromKey the low key.
+     * @param inclusive whether the low key is in the view.
+     * @return the view.
+     *
+     * @throws IOError if an error occurs while creating the view.
+     */
+    SortedMap<K, V> tailMap(K fromKey, boolean inclusive);
+}
@@ -0,0 +1,171 @@
+package org.eurekaclinical.datastore;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A list of puts and removes to apply to a data store with 
+ * {@link DataStore#write(org.eurekaclinical.datastore.WriteBatch) }. 
+ * Operations are applied in the order in which they were added. Unlike 
+ * {@link DataStore#put(java.lang.Object, java.lang.Object) } and
+ * {@link DataStore#remove(java.lang.Object) }, applying a batch does not 
+ * return the values that it replaces or removes, so data stores may write
+ * without reading first.
+ * 
+ * Instances of this class are not thread-safe.
+ *
+ * @author Andrew Post
+ * @param <K> the key type to store.
+ * @param <V> the value type to store.
+ */
+public class WriteBatch<K, V> {
+
+    private final List<Operation<K, V>> operations;
+
+    /**
+     * Creates an empty batch.
+     */
+    public WriteBatch() {
+        this.operations = new ArrayList<>();
+    }
+
+    /**
+     * Adds a put to the batch.
+     *
+     * @param key a key.
+     * @param value a value.
+     * @return this batch.
+     */
+    public WriteBatch<K, V> put(K key, V value) {
+        this.operations.add(new Operation<>(key, value, false));
+        return this;
+    }
+
+    /**
+     * Adds a put to the batch for each key-value pair in the given map.
+     *
+     * @param map a map.
+     * @return this batch.
+     */
+    public WriteBatch<K, V> putAll(Map<? extends K, ? extends V> map) {
+        for (Map.Entry<? extends K, ? extends V> me : map.entrySet()) {
+            put(me.getKey(), me.getValue());
+        }
+        return this;
+    }
+
+    /**
+     * Adds a remove to the batch.
+     *
+     * @param key a key.
+     * @return this batch.
+     */
+    public WriteBatch<K, V> remove(K key) {
+        this.operations.add(new Operation<>(key, null, true));
+        return this;
+    }
+
+    /**
+     * Returns the number of operations in the batch.
+     *
+     * @return the number of operations.
+     */
+    public int size() {
+        return this.operations.size();
+    }
+
+    /**
+     * Returns whether the batch has no operations.
+     *
+     * @return <code>true</code> or <code>false</code>.
+     */
+    public boolean isEmpty() {
+        return this.operations.isEmpty();
+    }
+
+    /**
+     * Removes all operations from the batch, so that it can be reused.
+     */
+    public void clear() {
+        this.operations.clear();
+    }
+
+    /**
+     * Returns the operations in the batch, in the order in which they were
+     * added.
+     *
+     * @return an unmodifiable list of operations.
+     */
+    public List<Operation<K, V>> getOperations() {
+        return Collections.unmodifiableList(this.operations);
+    }
+
+    /**
+     * A put or a remove.
+     *
+     * @param <K> the key type to store.
+     * @param <V> the value type to store.
+     */
+    public static final class Operation<K, V> {
+
+        private final K key;
+        private final V value;
+        private final boolean remove;
+
+        private Operation(K key, V value, boolean remove) {
+            this.key = key;
+            this.value = value;
+            this.remove = remove;
+        }
+
+        /**
+         * Returns the key.
+         *
+         * @return the key.
+         */
+        public K getKey() {
+            return key;
+        }
+
+        /**
+         * Returns the value to put.
+         *
+         * @return the value, or <code>null</code> if this is a remove.
+         */
+        public V getValue() {
+            return value;
+        }
+
+        /**
+         * Returns whether this is a remove.
+         *
+         * @return <code>true</code> if this is a remove, <code>false</code> 
+         * if it is a put.
+         */
+        public boolean isRemove() {
+            return remove;
+        }
+    }
+}
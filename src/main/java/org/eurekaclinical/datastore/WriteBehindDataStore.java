@@ -0,0 +1,452 @@
+package org.eurekaclinical.datastore;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOError;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A data store that queues puts and removes in memory and writes them to 
+ * another data store in the background. Queued writes to the same key are
+ * coalesced so that only the last one is written, and reads see queued
+ * writes. The queue is drained with 
+ * {@link DataStore#write(org.eurekaclinical.datastore.WriteBatch) } once a
+ * write has been queued for the given delay, or sooner if the queue is 
+ * full. Writes block while the queue is full.
+ * 
+ * Keys are coalesced with {@link Object#equals(java.lang.Object) }, so 
+ * they must implement it consistently with the underlying data store, and 
+ * arrays are not supported as keys. Queued writes are lost if the 
+ * application crashes before they are written. {@link #size() }, 
+ * {@link #isEmpty() }, {@link #containsValue(java.lang.Object) } and the
+ * collection views write the queue first. The collection views are 
+ * read-only. If a background write fails, the writes in it stay queued, 
+ * background writing stops, and subsequent writes, {@link #flush() } and
+ * {@link #close() } throw an {@link IOError}.
+ * 
+ * This implementation is thread-safe if the underlying data store is.
+ *
+ * @author Andrew Post
+ * @param <K> the key type to store.
+ * @param <V> the value type to store.
+ */
+public class WriteBehindDataStore<K, V> implements DataStore<K, V> {
+
+    private static final Logger LOGGER = Logger.getLogger(
+            WriteBehindDataStore.class.getPackage().getName());
+
+    private final DataStore<K, V> store;
+    private final int capacity;
+    private final long delayNanos;
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+    private final Condition notFull;
+    private final Condition drained;
+    private final Thread writer;
+    private Map<K, Write<V>> pending;
+    private Map<K, Write<V>> inFlight;
+    private int flushRequests;
+    private long lastQueued;
+    private long lastWritten;
+    private boolean closed;
+    private Throwable failure;
+
+    /**
+     * Creates a data store that queues writes to the given data store.
+     *
+     * @param store the data store to write to. Cannot be <code>null</code>.
+     * @param capacity the maximum number of distinct keys with queued 
+     * writes. Must be positive.
+     * @param delay how long a write may stay queued before the queue is 
+     * drained. Longer delays coalesce more writes.
+     * @param unit the delay's unit. Cannot be <code>null</code>.
+     */
+    public WriteBehindDataStore(DataStore<K, V> store, int capacity, 
+            long delay, TimeUnit unit) {
+        if (store == null) {
+            throw new IllegalArgumentException("store cannot be null");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        if (delay < 0) {
+            throw new IllegalArgumentException("delay cannot be negative");
+        }
+        this.store = store;
+        this.capacity = capacity;
+        this.delayNanos = unit.toNanos(delay);
+        this.lock = new ReentrantLock();
+        this.notEmpty = this.lock.newCondition();
+        this.notFull = this.lock.newCondition();
+        this.drained = this.lock.newCondition();
+        this.pending = new LinkedHashMap<>();
+        this.inFlight = Collections.emptyMap();
+        this.writer = new Thread(this::drainLoop, 
+                "WriteBehindDataStore writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Blocks until all writes that were queued when this method was called
+     * have been written to the underlying data store.
+     *
+     * @throws IOError if a background write failed.
+     */
+    public void flush() {
+        this.lock.lock();
+        try {
+            long target = this.lastQueued;
+            this.flushRequests++;
+            this.notEmpty.signal();
+            try {
+                while (this.failure == null && this.writer.isAlive()
+                        && this.lastWritten < target) {
+                    this.drained.awaitUninterruptibly();
+                }
+            } finally {
+                this.flushRequests--;
+            }
+            checkFailure();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the queue, stops the background writer, and closes the 
+     * underlying data store.
+     *
+     * @throws IOError if a background write failed, or an error occurred 
+     * closing the underlying data store.
+     */
+    @Override
+    public void close() {
+        this.lock.lock();
+        try {
+            this.closed = true;
+            this.notEmpty.signal();
+        } finally {
+            this.lock.unlock();
+        }
+        boolean interrupted = false;
+        while (this.writer.isAlive()) {
+            try {
+                this.writer.join();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        this.store.close();
+        this.lock.lock();
+        try {
+            checkFailure();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        this.lock.lock();
+        try {
+            return this.closed || this.store.isClosed();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public V get(Object key) {
+        this.lock.lock();
+        try {
+            Write<V> write = queued(key);
+            if (write != null) {
+                return write.value;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        return this.store.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        this.lock.lock();
+        try {
+            Write<V> write = queued(key);
+            if (write != null) {
+                return !write.remove;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        return this.store.containsKey(key);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return enqueue(key, new Write<>(value, false), true);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        return enqueue((K) key, new Write<>(null, true), true);
+    }
+
+    /**
+     * Queues all of the key-value pairs from the given map, without reading
+     * the values that they replace.
+     * 
+     * @param m a map.
+     * 
+     * @throws IOError if a background write failed.
+     */
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for (Map.Entry<? extends K, ? extends V> me : m.entrySet()) {
+            enqueue(me.getKey(), new Write<>(me.getValue(), false), false);
+        }
+    }
+
+    /**
+     * Queues the puts and removes in the given batch, without reading the 
+     * values that they replace.
+     * 
+     * @param batch a batch of operations.
+     * 
+     * @throws IOError if a background write failed.
+     */
+    @Override
+    public void write(WriteBatch<K, V> batch) {
+        for (WriteBatch.Operation<K, V> operation : batch.getOperations()) {
+            enqueue(operation.getKey(), 
+                    new Write<>(operation.getValue(), operation.isRemove()),
+                    false);
+        }
+    }
+
+    @Override
+    public void clear() {
+        this.lock.lock();
+        try {
+            checkFailure();
+            this.pending.clear();
+            long cleared = this.lastQueued;
+            this.notFull.signalAll();
+            while (this.failure == null && !this.inFlight.isEmpty()) {
+                this.drained.awaitUninterruptibly();
+            }
+            checkFailure();
+            this.store.clear();
+            this.lastWritten = Math.max(this.lastWritten, cleared);
+            this.drained.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        flush();
+        return this.store.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        flush();
+        return this.store.isEmpty();
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        flush();
+        return this.store.containsValue(value);
+    }
+
+    @Override
+    public Set<K> keySet() {
+        flush();
+        return Collections.unmodifiableSet(this.store.keySet());
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        flush();
+        return Collections.unmodifiableSet(this.store.entrySet());
+    }
+
+    @Override
+    public Collection<V> values() {
+        flush();
+        return Collections.unmodifiableCollection(this.store.values());
+    }
+
+    private Write<V> queued(Object key) {
+        Write<V> write = this.pending.get(key);
+        return write != null ? write : this.inFlight.get(key);
+    }
+
+    /**
+     * Queues a write, waiting while the queue is full.
+     * 
+     * @param key the key.
+     * @param write the write.
+     * @param readOld whether to return the key's current value. It is read
+     * while the queue is locked, from the queue if the key has a queued 
+     * write and otherwise from the underlying data store, so that 
+     * concurrent writes to the key each see the value that they replace.
+     * @return the key's current value, or <code>null</code> if there is 
+     * none or <code>readOld</code> is <code>false</code>.
+     */
+    private V enqueue(K key, Write<V> write, boolean readOld) {
+        if (key != null && key.getClass().isArray()) {
+            throw new IllegalArgumentException(
+                    "Array keys are not supported");
+        }
+        this.lock.lock();
+        try {
+            checkFailure();
+            if (this.closed) {
+                throw new IllegalStateException("closed");
+            }
+            while (this.pending.size() >= this.capacity 
+                    && !this.pending.containsKey(key)) {
+                this.notEmpty.signal();
+                this.notFull.awaitUninterruptibly();
+                checkFailure();
+            }
+            V oldValue = null;
+            if (readOld) {
+                Write<V> queued = queued(key);
+                oldValue = queued != null ? queued.value 
+                        : this.store.get(key);
+            }
+            this.pending.put(key, write);
+            this.lastQueued++;
+            if (this.pending.size() == 1) {
+                this.notEmpty.signal();
+            }
+            return oldValue;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void checkFailure() {
+        if (this.failure != null) {
+            throw new IOError(this.failure);
+        }
+    }
+
+    private void drainLoop() {
+        while (true) {
+            Map<K, Write<V>> toWrite;
+            long queuedThrough;
+            this.lock.lock();
+            try {
+                while (!this.closed && this.pending.isEmpty()) {
+                    this.notEmpty.awaitUninterruptibly();
+                }
+                long nanos = this.delayNanos;
+                while (!this.closed && this.flushRequests == 0 
+                        && this.pending.size() < this.capacity 
+                        && nanos > 0) {
+                    try {
+                        nanos = this.notEmpty.awaitNanos(nanos);
+                    } catch (InterruptedException ex) {
+                        // keep waiting; the writer stops only when closed
+                    }
+                }
+                if (this.pending.isEmpty()) {
+                    return;
+                }
+                toWrite = this.pending;
+                queuedThrough = this.lastQueued;
+                this.inFlight = toWrite;
+                this.pending = new LinkedHashMap<>();
+                this.notFull.signalAll();
+            } finally {
+                this.lock.unlock();
+            }
+            WriteBatch<K, V> batch = new WriteBatch<>();
+            for (Map.Entry<K, Write<V>> me : toWrite.entrySet()) {
+                Write<V> write = me.getValue();
+                if (write.remove) {
+                    batch.remove(me.getKey());
+                } else {
+                    batch.put(me.getKey(), write.value);
+                }
+            }
+            Throwable error = null;
+            try {
+                this.store.write(batch);
+            } catch (RuntimeException | Error ex) {
+                LOGGER.log(Level.SEVERE, "Error writing queued writes", ex);
+                error = ex;
+            }
+            this.lock.lock();
+            try {
+                this.inFlight = Collections.emptyMap();
+                if (error != null) {
+                    for (Map.Entry<K, Write<V>> me : toWrite.entrySet()) {
+                        this.pending.putIfAbsent(me.getKey(), me.getValue());
+                    }
+                    this.failure = error;
+                    this.notFull.signalAll();
+                } else {
+                    this.lastWritten = Math.max(this.lastWritten, 
+                            queuedThrough);
+                }
+                this.drained.signalAll();
+                if (error != null) {
+                    return;
+                }
+            } finally {
+                this.lock.unlock();
+            }
+        }
+    }
+
+    private static final class Write<V> {
+
+        private final V value;
+        private final boolean remove;
+
+        Write(V value, boolean remove) {
+            this.value = value;
+            this.remove = remove;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.sleepycat.bind.ByteArrayBinding;
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.bind.tuple.BooleanBinding;
+import com.sleepycat.bind.tuple.DoubleBinding;
+import com.sleepycat.bind.tuple.IntegerBinding;
+import com.sleepycat.bind.tuple.LongBinding;
+import com.sleepycat.bind.tuple.StringBinding;
+import com.sleepycat.bind.tuple.TupleBinding;
+import java.util.UUID;
+
+/**
+ * Built-in key and value bindings for use with
+ * {@link BdbStoreFactory#getInstance(java.lang.String, com.sleepycat.bind.EntryBinding, com.sleepycat.bind.EntryBinding) }.
+ * Berkeley DB's {@link EntryBinding} interface is the extension point for
+ * converting keys and values to and from bytes. Any implementation may be
+ * passed to the factory; the bindings returned here are tuple bindings that
+ * write a compact representation of a single primitive or string, which avoids
+ * the overhead of Java serialization that the default serial binding incurs.
+ *
+ * Berkeley DB orders keys by comparing their bytes. Bindings described below
+ * as order-preserving write keys such that this byte order matches the keys'
+ * natural order, which is required for range queries to be meaningful and
+ * keeps keys that are close in value close together in the database. The
+ * default serial binding is not order-preserving.
+ *
+ * All bindings returned by this class are thread-safe.
+ *
+ * @author Andrew Post
+ */
+public final class BdbBindings {
+
+    private BdbBindings() {
+    }
+
+    /**
+     * Returns a binding for {@link String}s. Strings are written in Berkeley
+     * DB's null-terminated tuple format, which allows them to be combined
+     * with other values in a tuple. For string keys, 
+     * {@link #utf8StringBinding() } is usually a better choice.
+     *
+     * @return a binding.
+     */
+    public static EntryBinding<String> stringBinding() {
+        return new StringBinding();
+    }
+
+    /**
+     * Returns an order-preserving binding for {@link Long}s. Values are
+     * written as 8 bytes in big-endian order with the sign bit flipped.
+     *
+     * @return a binding.
+     */
+    public static EntryBinding<Long> longBinding() {
+        return new LongBinding();
+    }
+
+    /**
+     * Returns an order-preserving binding for {@link Integer}s. Values are
+     * written as 4 bytes in big-endian order with the sign bit flipped.
+     *
+     * @return a binding.
+     */
+    public static EntryBinding<Integer> integerBinding() {
+        return new IntegerBinding();
+    }
+
+    /**
+     * Returns an order-preserving binding for {@link String}s that writes
+     * their UTF-8 bytes. See {@link Utf8StringBinding} for details.
+     *
+     * @return a binding.
+     */
+    public static EntryBinding<String> utf8StringBinding() {
+        return new Utf8StringBinding();
+    }
+
+    /**
+     * Returns an order-preserving binding for {@link UUID}s. Values are 
+     * written as 16 bytes.
+     *
+     * @return a binding.
+     */
+    public static EntryBinding<UUID> uuidBinding() {
+        return new UuidBinding();
+    }
+
+    /**
+     * Returns a binding for {@link Double}s. Values are written as 8 bytes.
+     *
+     * @return a binding.
+     */
+    public static EntryBinding<Double> doubleBinding() {
+        return new DoubleBinding();
+    }
+
+    /**
+     * Returns a binding for {@link Boolean}s. Values are written as 1 byte.
+     *
+     * @return a binding.
+     */
+    public static EntryBinding<Boolean> booleanBinding() {
+        return new BooleanBinding();
+    }
+
+    /**
+     * Returns a binding that stores byte arrays as-is.
+     *
+     * @return a binding.
+     */
+    public static EntryBinding<byte[]> byteArrayBinding() {
+        return new ByteArrayBinding();
+    }
+
+    /**
+     * Returns a tuple binding for a primitive wrapper class or 
+     * {@link String}.
+     *
+     * @param <T> the type to bind.
+     * @param cls the class to bind. Cannot be <code>null</code>.
+     * @return a binding.
+     * 
+     * @throws IllegalArgumentException if there is no built-in binding for
+     * the given class.
+     */
+    public static <T> EntryBinding<T> primitiveBinding(Class<T> cls) {
+        if (cls == null) {
+            throw new IllegalArgumentException("cls cannot be null");
+        }
+        EntryBinding<T> binding = TupleBinding.getPrimitiveBinding(cls);
+        if (binding == null) {
+            throw new IllegalArgumentException(
+                    "No built-in binding for " + cls.getName());
+        }
+        return binding;
+    }
+
+    /**
+     * Returns the binding that a data store should use for the given class:
+     * the binding generated for the class if it is annotated with
+     * {@link TupleBound}, a built-in tuple binding if the class is a
+     * primitive wrapper or {@link String}, and otherwise <code>null</code>,
+     * which tells {@link BdbStoreFactory} to use Java serialization.
+     *
+     * @param <T> the type to bind.
+     * @param cls the class to bind. Cannot be <code>null</code>.
+     * @return a binding, or <code>null</code>.
+     *
+     * @throws IllegalStateException if the class is annotated with
+     * {@link TupleBound} but its generated binding could not be loaded, for
+     * example, because annotation processing was disabled when it was
+     * compiled.
+     */
+    public static <T> EntryBinding<T> forClass(Class<T> cls) {
+        if (cls == null) {
+            throw new IllegalArgumentException("cls cannot be null");
+        }
+        if (cls.isAnnotationPresent(TupleBound.class)) {
+            String className = cls.getName();
+            String packageName = cls.getPackage() != null
+                    ? cls.getPackage().getName() : "";
+            String localName = packageName.isEmpty() ? className
+                    : className.substring(packageName.length() + 1);
+            String bindingName = (packageName.isEmpty() ? "" 
+                    : packageName + ".")
+                    + localName.replace('$', '_') + "TupleBinding";
+            try {
+                @SuppressWarnings("unchecked")
+                EntryBinding<T> binding = (EntryBinding<T>) Class.forName(
+                        bindingName, true, cls.getClassLoader())
+                        .getDeclaredConstructor().newInstance();
+                return binding;
+            } catch (ReflectiveOperationException | ClassCastException ex) {
+                throw new IllegalStateException(
+                        "Could not load generated binding " + bindingName, ex);
+            }
+        }
+        return TupleBinding.getPrimitiveBinding(cls);
+    }
+}
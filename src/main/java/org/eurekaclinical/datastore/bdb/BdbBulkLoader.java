@@ -0,0 +1,477 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.util.RuntimeExceptionWrapper;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOError;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import org.eurekaclinical.datastore.DataStore;
+
+/**
+ * Loads entries into an empty Berkeley DB data store in key order. The 
+ * entries are converted to bytes, in parallel if the data store has more
+ * than one encoding thread (see 
+ * {@link BdbStoreConfig#setEncodingThreads(int) }), and sorted in runs 
+ * that fit in the given amount of memory. Full runs are written to 
+ * temporary files, and the runs are merged and written to the data store 
+ * with one cursor per transaction. Writing in key order fills the 
+ * database's B-tree nodes one after another instead of splitting them at 
+ * random, which is much faster than putting the entries one at a time and 
+ * leaves the tree well packed.
+ * 
+ * If a key is loaded more than once, its last value is kept. If the data 
+ * store is transactional, the entries are committed in transactions of 
+ * {@link BdbStoreConfig#getBatchCommitSize() } entries, so a large batch 
+ * commit size is recommended for bulk loads.
+ *
+ * @author Andrew Post
+ * @param <K> the key type to store.
+ * @param <V> the value type to store.
+ */
+public final class BdbBulkLoader<K, V> {
+
+    /**
+     * The default amount of memory for sorting a run, 64 MB.
+     */
+    public static final long DEFAULT_RUN_MEMORY = 64L * 1024 * 1024;
+
+    /**
+     * The estimated memory used by an entry in a run besides its key and 
+     * value bytes.
+     */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    /**
+     * The number of entries that are read and converted to bytes at a time.
+     */
+    private static final int BLOCK_SIZE = 1000;
+
+    private static final Comparator<Map.Entry<byte[], byte[]>> KEY_ORDER
+            = (me1, me2) -> BdbMap.compareKeys(me1.getKey(), me2.getKey());
+
+    private final BdbMap<K, V> store;
+    private long runMemory;
+    private File tempDirectory;
+
+    /**
+     * Creates a bulk loader for the given data store.
+     * 
+     * @param store a data store created by a {@link BdbStoreFactory}.
+     * 
+     * @throws IllegalArgumentException if the data store was not created by
+     * a {@link BdbStoreFactory}.
+     */
+    public BdbBulkLoader(DataStore<K, V> store) {
+        if (!(store instanceof BdbMap)) {
+            throw new IllegalArgumentException(
+                    "store must be created by a BdbStoreFactory");
+        }
+        this.store = (BdbMap<K, V>) store;
+        this.runMemory = DEFAULT_RUN_MEMORY;
+    }
+
+    /**
+     * Returns the approximate amount of memory for sorting a run.
+     * 
+     * @return a number of bytes.
+     */
+    public long getRunMemory() {
+        return runMemory;
+    }
+
+    /**
+     * Sets the approximate amount of memory for sorting a run. Larger runs 
+     * mean fewer temporary files to merge. The default is 
+     * {@link #DEFAULT_RUN_MEMORY}.
+     * 
+     * @param runMemory a positive number of bytes.
+     * @return this bulk loader.
+     * 
+     * @throws IllegalArgumentException if <code>runMemory</code> is not 
+     * positive.
+     */
+    public BdbBulkLoader<K, V> setRunMemory(long runMemory) {
+        if (runMemory <= 0) {
+            throw new IllegalArgumentException(
+                    "runMemory must be positive but was " + runMemory);
+        }
+        this.runMemory = runMemory;
+        return this;
+    }
+
+    /**
+     * Returns the directory for temporary run files.
+     * 
+     * @return a directory, or <code>null</code> for the default temporary 
+     * directory.
+     */
+    public File getTempDirectory() {
+        return tempDirectory;
+    }
+
+    /**
+     * Sets the directory for temporary run files.
+     * 
+     * @param tempDirectory a directory, or <code>null</code> for the 
+     * default temporary directory.
+     * @return this bulk loader.
+     */
+    public BdbBulkLoader<K, V> setTempDirectory(File tempDirectory) {
+        this.tempDirectory = tempDirectory;
+        return this;
+    }
+
+    /**
+     * Loads the given entries into the data store. The stream is closed 
+     * when loading is done.
+     * 
+     * @param entries the entries in any order.
+     * @return the number of distinct keys loaded.
+     * 
+     * @throws IOException if an error occurs reading or writing the 
+     * temporary run files.
+     * @throws IllegalStateException if the data store is not empty.
+     * @throws IOError if an entry cannot be converted to bytes or an error
+     * occurs writing to the data store.
+     */
+    public long load(Stream<? extends Map.Entry<? extends K, ? extends V>>
+            entries) throws IOException {
+        try (Stream<? extends Map.Entry<? extends K, ? extends V>> s 
+                = entries) {
+            return load(s.iterator());
+        }
+    }
+
+    /**
+     * Loads the given entries into the data store.
+     * 
+     * @param entries the entries in any order.
+     * @return the number of distinct keys loaded.
+     * 
+     * @throws IOException if an error occurs reading or writing the 
+     * temporary run files.
+     * @throws IllegalStateException if the data store is not empty.
+     * @throws IOError if an entry cannot be converted to bytes or an error
+     * occurs writing to the data store.
+     */
+    public long load(Iterator<? extends Map.Entry<? extends K, ? extends V>>
+            entries) throws IOException {
+        if (!this.store.isEmpty()) {
+            throw new IllegalStateException("data store is not empty");
+        }
+        EntryBinding<K> keyBinding = this.store.getKeyBinding();
+        EntryBinding<V> valueBinding = this.store.getStoredValueBinding();
+        List<File> runFiles = new ArrayList<>();
+        List<RunReader> readers = new ArrayList<>();
+        Throwable failure = null;
+        try {
+            List<Map.Entry<byte[], byte[]>> run = new ArrayList<>();
+            long runBytes = 0;
+            Function<Map.Entry<? extends K, ? extends V>, 
+                    Map.Entry<byte[], byte[]>> encoder = me 
+                    -> new AbstractMap.SimpleImmutableEntry<>(
+                            toBytes(keyBinding, me.getKey()),
+                            toBytes(valueBinding, me.getValue()));
+            BdbMap.Encoding<Map.Entry<byte[], byte[]>> encoding 
+                    = this.store.encode(readBlock(entries), encoder);
+            while (encoding != null) {
+                // Read the next block while the current one is converted.
+                List<Map.Entry<? extends K, ? extends V>> block 
+                        = readBlock(entries);
+                List<Map.Entry<byte[], byte[]>> encoded = encoding.get();
+                encoding = block.isEmpty() 
+                        ? null : this.store.encode(block, encoder);
+                for (Map.Entry<byte[], byte[]> me : encoded) {
+                    run.add(me);
+                    runBytes += me.getKey().length + me.getValue().length
+                            + ENTRY_OVERHEAD;
+                    if (runBytes >= this.runMemory) {
+                        File runFile = File.createTempFile("bdb-bulk-load", 
+                                ".run", this.tempDirectory);
+                        runFiles.add(runFile);
+                        writeRun(sortRun(run), runFile);
+                        run.clear();
+                        runBytes = 0;
+                    }
+                }
+            }
+            List<Iterator<Map.Entry<byte[], byte[]>>> runs 
+                    = new ArrayList<>(runFiles.size() + 1);
+            for (File runFile : runFiles) {
+                RunReader reader = new RunReader(runFile);
+                readers.add(reader);
+                runs.add(reader);
+            }
+            runs.add(sortRun(run).iterator());
+            return this.store.loadSorted(new MergingIterator(runs));
+        } catch (UncheckedIOException ex) {
+            failure = ex.getCause();
+            throw ex.getCause();
+        } catch (IOException | RuntimeException | Error ex) {
+            failure = ex;
+            throw ex;
+        } finally {
+            closeRuns(readers, runFiles, failure);
+        }
+    }
+
+    /**
+     * Closes the run readers and deletes the run files. Every reader is 
+     * closed and every file is deleted even if closing a reader fails.
+     * 
+     * @param readers the run readers.
+     * @param runFiles the run files.
+     * @param failure the exception that the load is failing with, to which
+     * errors closing the readers are added as suppressed exceptions, or 
+     * <code>null</code> if the load succeeded.
+     * @throws IOException if the load succeeded and closing a reader 
+     * failed.
+     */
+    private static void closeRuns(List<RunReader> readers, 
+            List<File> runFiles, Throwable failure) throws IOException {
+        IOException closeFailure = null;
+        try {
+            for (RunReader reader : readers) {
+                try {
+                    reader.close();
+                } catch (IOException ex) {
+                    if (failure != null) {
+                        failure.addSuppressed(ex);
+                    } else if (closeFailure == null) {
+                        closeFailure = ex;
+                    } else {
+                        closeFailure.addSuppressed(ex);
+                    }
+                }
+            }
+        } finally {
+            for (File runFile : runFiles) {
+                runFile.delete();
+            }
+        }
+        if (closeFailure != null) {
+            throw closeFailure;
+        }
+    }
+
+    private static <K, V> List<Map.Entry<? extends K, ? extends V>> 
+            readBlock(Iterator<? extends Map.Entry<? extends K, ? extends V>>
+                    entries) {
+        List<Map.Entry<? extends K, ? extends V>> block 
+                = new ArrayList<>(BLOCK_SIZE);
+        while (block.size() < BLOCK_SIZE && entries.hasNext()) {
+            block.add(entries.next());
+        }
+        return block;
+    }
+
+    private static <T> byte[] toBytes(EntryBinding<T> binding, T object) {
+        DatabaseEntry entry = new DatabaseEntry();
+        try {
+            binding.objectToEntry(object, entry);
+        } catch (RuntimeExceptionWrapper | IllegalArgumentException ex) {
+            throw new IOError(ex);
+        }
+        return Arrays.copyOfRange(entry.getData(), entry.getOffset(),
+                entry.getOffset() + entry.getSize());
+    }
+
+    /**
+     * Sorts a run by key, keeping the last value of each key.
+     * 
+     * @param run the entries in the order in which they were loaded.
+     * @return the sorted entries with distinct keys.
+     */
+    private static List<Map.Entry<byte[], byte[]>> sortRun(
+            List<Map.Entry<byte[], byte[]>> run) {
+        // List.sort is stable, so the last value of a key sorts last.
+        run.sort(KEY_ORDER);
+        List<Map.Entry<byte[], byte[]>> result = new ArrayList<>(run.size());
+        for (Map.Entry<byte[], byte[]> me : run) {
+            int last = result.size() - 1;
+            if (last >= 0 && KEY_ORDER.compare(result.get(last), me) == 0) {
+                result.set(last, me);
+            } else {
+                result.add(me);
+            }
+        }
+        return result;
+    }
+
+    private static void writeRun(List<Map.Entry<byte[], byte[]>> run, 
+            File runFile) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(runFile)))) {
+            for (Map.Entry<byte[], byte[]> me : run) {
+                out.writeInt(me.getKey().length);
+                out.write(me.getKey());
+                out.writeInt(me.getValue().length);
+                out.write(me.getValue());
+            }
+            out.writeInt(-1);
+        }
+    }
+
+    /**
+     * Reads the entries in a run file.
+     */
+    private static final class RunReader 
+            implements Iterator<Map.Entry<byte[], byte[]>>, Closeable {
+
+        private final DataInputStream in;
+        private Map.Entry<byte[], byte[]> next;
+
+        RunReader(File runFile) throws IOException {
+            this.in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(runFile)));
+            try {
+                this.next = read();
+            } catch (IOException ex) {
+                try {
+                    this.in.close();
+                } catch (IOException closeEx) {
+                    ex.addSuppressed(closeEx);
+                }
+                throw ex;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next != null;
+        }
+
+        @Override
+        public Map.Entry<byte[], byte[]> next() {
+            if (this.next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<byte[], byte[]> result = this.next;
+            try {
+                this.next = read();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return result;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.in.close();
+        }
+
+        private Map.Entry<byte[], byte[]> read() throws IOException {
+            int keyLength = this.in.readInt();
+            if (keyLength < 0) {
+                return null;
+            }
+            byte[] key = new byte[keyLength];
+            this.in.readFully(key);
+            byte[] value = new byte[this.in.readInt()];
+            this.in.readFully(value);
+            return new AbstractMap.SimpleImmutableEntry<>(key, value);
+        }
+    }
+
+    /**
+     * Merges sorted runs into one sequence of distinct keys. When runs have
+     * the same key, the value from the latest run is kept.
+     */
+    private static final class MergingIterator
+            implements Iterator<Map.Entry<byte[], byte[]>> {
+
+        private final PriorityQueue<Head> heads;
+
+        MergingIterator(List<Iterator<Map.Entry<byte[], byte[]>>> runs) {
+            this.heads = new PriorityQueue<>(Math.max(1, runs.size()),
+                    (h1, h2) -> {
+                        int cmp = KEY_ORDER.compare(h1.entry, h2.entry);
+                        return cmp != 0 ? cmp 
+                                : Integer.compare(h2.index, h1.index);
+                    });
+            for (int i = 0, n = runs.size(); i < n; i++) {
+                advance(new Head(runs.get(i), i));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !this.heads.isEmpty();
+        }
+
+        @Override
+        public Map.Entry<byte[], byte[]> next() {
+            Head head = this.heads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<byte[], byte[]> result = head.entry;
+            advance(head);
+            while (!this.heads.isEmpty() 
+                    && KEY_ORDER.compare(this.heads.peek().entry, result) 
+                    == 0) {
+                advance(this.heads.poll());
+            }
+            return result;
+        }
+
+        private void advance(Head head) {
+            if (head.run.hasNext()) {
+                head.entry = head.run.next();
+                this.heads.add(head);
+            }
+        }
+    }
+
+    private static final class Head {
+
+        private final Iterator<Map.Entry<byte[], byte[]>> run;
+        private final int index;
+        private Map.Entry<byte[], byte[]> entry;
+
+        Head(Iterator<Map.Entry<byte[], byte[]>> run, int index) {
+            this.run = run;
+            this.index = index;
+        }
+    }
+}
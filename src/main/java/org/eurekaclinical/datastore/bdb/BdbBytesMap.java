@@ -0,0 +1,156 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseEntry;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.eurekaclinical.datastore.BytesDataStore;
+
+/**
+ * A Berkeley DB data store whose keys and values are byte arrays. Keys and
+ * values are passed to and from the database as they are. Byte arrays 
+ * returned by this data store are not shared with it and may be modified.
+ *
+ * This implementation is thread-safe.
+ *
+ * @author Andrew Post
+ */
+public class BdbBytesMap extends BdbMap<byte[], byte[]> 
+        implements BytesDataStore {
+
+    /**
+     * Creates a new byte array Berkeley DB data store.
+     * 
+     * @param envInfo the database environment configuration.
+     * @param database the database.
+     * @param config the data store's options, or <code>null</code> for the
+     * defaults.
+     */
+    BdbBytesMap(BdbEnvironmentInfo envInfo, Database database,
+            BdbStoreConfig<?, ?> config) {
+        super(envInfo, database, new DirectByteArrayBinding(),
+                new DirectByteArrayBinding(), config);
+    }
+
+    @Override
+    public byte[] get(Object key) {
+        if (!(key instanceof byte[])) {
+            return null;
+        }
+        return getEntry(new DatabaseEntry((byte[]) key));
+    }
+
+    @Override
+    public ByteBuffer get(ByteBuffer key) {
+        byte[] value = getEntry(entry(key));
+        return value != null ? ByteBuffer.wrap(value) : null;
+    }
+
+    @Override
+    public byte[] put(byte[] key, byte[] value) {
+        return putEntry(entry(key), entry(value));
+    }
+
+    @Override
+    public void set(byte[] key, byte[] value) {
+        setEntry(entry(key), entry(value));
+    }
+
+    @Override
+    public void set(ByteBuffer key, ByteBuffer value) {
+        setEntry(entry(key), entry(value));
+    }
+
+    @Override
+    public byte[] remove(Object key) {
+        if (!(key instanceof byte[])) {
+            return null;
+        }
+        return removeEntry(new DatabaseEntry((byte[]) key));
+    }
+
+    @Override
+    public boolean delete(byte[] key) {
+        return deleteEntry(entry(key));
+    }
+
+    @Override
+    public boolean delete(ByteBuffer key) {
+        return deleteEntry(entry(key));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (!(key instanceof byte[])) {
+            return false;
+        }
+        return containsEntry(new DatabaseEntry((byte[]) key));
+    }
+
+    private static DatabaseEntry entry(byte[] bytes) {
+        if (bytes == null) {
+            throw new IllegalArgumentException("bytes cannot be null");
+        }
+        return new DatabaseEntry(bytes);
+    }
+
+    private static DatabaseEntry entry(ByteBuffer buffer) {
+        if (buffer == null) {
+            throw new IllegalArgumentException("buffer cannot be null");
+        }
+        if (buffer.hasArray()) {
+            return new DatabaseEntry(buffer.array(), 
+                    buffer.arrayOffset() + buffer.position(),
+                    buffer.remaining());
+        } else {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.duplicate().get(bytes);
+            return new DatabaseEntry(bytes);
+        }
+    }
+
+    /**
+     * A byte array binding that avoids copying arrays that Berkeley DB has
+     * allocated for a single read.
+     */
+    private static final class DirectByteArrayBinding 
+            implements EntryBinding<byte[]> {
+
+        @Override
+        public byte[] entryToObject(DatabaseEntry entry) {
+            byte[] data = entry.getData();
+            if (entry.getOffset() == 0 && entry.getSize() == data.length) {
+                return data;
+            } else {
+                return Arrays.copyOfRange(data, entry.getOffset(),
+                        entry.getOffset() + entry.getSize());
+            }
+        }
+
+        @Override
+        public void objectToEntry(byte[] object, DatabaseEntry entry) {
+            entry.setData(object);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.CursorConfig;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.EnvironmentFailureException;
+import com.sleepycat.je.Get;
+import com.sleepycat.je.OperationFailureException;
+import com.sleepycat.je.OperationResult;
+import com.sleepycat.je.Transaction;
+import com.sleepycat.util.RuntimeExceptionWrapper;
+import java.io.IOError;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * A spliterator over the records of a database in key order. It opens a 
+ * read-committed cursor when it is first advanced, and closes the cursor 
+ * when it runs out of records, when reading fails, or when 
+ * {@link #close() } is called.
+ * 
+ * Before it is advanced, a spliterator without a transaction can be split
+ * into two spliterators over disjoint key ranges, each with its own 
+ * cursor, so that parallel streams scan the database with several threads.
+ * The split key is sampled from the database: it is the first key at or 
+ * after the midpoint of the bytes of the range's lowest and highest keys.
+ * The size estimate starts unknown and is halved by each split, which 
+ * limits splitting to a few ranges per thread. The spliterators that are 
+ * split off are recorded with the spliterator that they were split from, 
+ * so that {@link #closeAll() } can close their cursors when a stream stops
+ * before it has read all of their records.
+ *
+ * @author Andrew Post
+ * @param <T> the element type.
+ */
+final class BdbCursorSpliterator<T> implements Spliterator<T>, 
+        AutoCloseable {
+
+    private final Database db;
+    private final Transaction txn;
+    private final BiFunction<DatabaseEntry, DatabaseEntry, T> reader;
+    private final boolean keysOnly;
+    private byte[] fromKey;
+    private final byte[] toKey;
+    private final DatabaseEntry toEntry;
+    private final List<BdbCursorSpliterator<T>> splits;
+    private long estimate;
+    private Cursor cursor;
+    private boolean done;
+
+    /**
+     * Creates a spliterator over all of the records in a database.
+     * 
+     * @param database the database.
+     * @param txn the transaction, or <code>null</code>.
+     * @param reader the function that converts a record's key and data to
+     * an element, or to <code>null</code> to skip the record.
+     * @param keysOnly <code>true</code> to read the records' keys only, in
+     * which case the data passed to the reader is empty.
+     */
+    BdbCursorSpliterator(Database database, Transaction txn,
+            BiFunction<DatabaseEntry, DatabaseEntry, T> reader, 
+            boolean keysOnly) {
+        this(database, txn, reader, keysOnly, null, null, Long.MAX_VALUE,
+                Collections.synchronizedList(new ArrayList<>()));
+    }
+
+    private BdbCursorSpliterator(Database database, Transaction txn,
+            BiFunction<DatabaseEntry, DatabaseEntry, T> reader, 
+            boolean keysOnly, byte[] fromKey, byte[] toKey, long estimate,
+            List<BdbCursorSpliterator<T>> splits) {
+        this.db = database;
+        this.txn = txn;
+        this.reader = reader;
+        this.keysOnly = keysOnly;
+        this.fromKey = fromKey;
+        this.toKey = toKey;
+        this.toEntry = toKey != null ? new DatabaseEntry(toKey) : null;
+        this.estimate = estimate;
+        this.splits = splits;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (this.done) {
+            return false;
+        }
+        DatabaseEntry keyEntry = new DatabaseEntry();
+        DatabaseEntry dataEntry = new DatabaseEntry();
+        if (this.keysOnly) {
+            dataEntry.setPartial(0, 0, true);
+        }
+        T element;
+        try {
+            do {
+                OperationResult result;
+                if (this.cursor == null) {
+                    this.cursor = this.db.openCursor(this.txn, 
+                            CursorConfig.READ_COMMITTED);
+                    if (this.fromKey != null) {
+                        keyEntry.setData(this.fromKey);
+                        result = this.cursor.get(keyEntry, dataEntry, 
+                                Get.SEARCH_GTE, null);
+                    } else {
+                        result = this.cursor.get(keyEntry, dataEntry, 
+                                Get.FIRST, null);
+                    }
+                } else {
+                    result = this.cursor.get(keyEntry, dataEntry, Get.NEXT, 
+                            null);
+                }
+                if (result == null || (this.toEntry != null 
+                        && BdbMap.compareKeys(keyEntry, this.toEntry) >= 0)) {
+                    close();
+                    return false;
+                }
+                element = this.reader.apply(keyEntry, dataEntry);
+            } while (element == null);
+        } catch (OperationFailureException | EnvironmentFailureException
+                | RuntimeExceptionWrapper | IllegalStateException ex) {
+            close();
+            throw new IOError(ex);
+        }
+        action.accept(element);
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        try {
+            while (tryAdvance(action)) {
+                // Each call passes one element to the action.
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Splits off the lower half of this spliterator's key range, if it has
+     * not been advanced yet, it has no transaction, and the range has at 
+     * least two keys.
+     * 
+     * @return a spliterator over the lower half of the range, or 
+     * <code>null</code> if this spliterator cannot be split.
+     */
+    @Override
+    public Spliterator<T> trySplit() {
+        if (this.done || this.cursor != null || this.txn != null 
+                || this.estimate <= 1) {
+            return null;
+        }
+        byte[] splitKey;
+        try {
+            splitKey = sampleSplitKey();
+        } catch (OperationFailureException | EnvironmentFailureException
+                | IllegalStateException ex) {
+            throw new IOError(ex);
+        }
+        if (splitKey == null) {
+            return null;
+        }
+        this.estimate >>>= 1;
+        BdbCursorSpliterator<T> prefix = new BdbCursorSpliterator<>(this.db,
+                null, this.reader, this.keysOnly, this.fromKey, splitKey, 
+                this.estimate, this.splits);
+        this.splits.add(prefix);
+        this.fromKey = splitKey;
+        return prefix;
+    }
+
+    /**
+     * Returns an estimate that starts at {@link Long#MAX_VALUE}, because 
+     * counting the records would take a pass over the database, and is 
+     * halved by each split.
+     * 
+     * @return the estimate.
+     */
+    @Override
+    public long estimateSize() {
+        return this.estimate;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | DISTINCT | NONNULL;
+    }
+
+    /**
+     * Finds a key that splits this spliterator's range into two non-empty
+     * ranges.
+     * 
+     * @return the lowest key of the upper range, or <code>null</code> if 
+     * the range has fewer than two keys.
+     */
+    private byte[] sampleSplitKey() {
+        DatabaseEntry keyEntry = new DatabaseEntry();
+        DatabaseEntry dataEntry = new DatabaseEntry();
+        dataEntry.setPartial(0, 0, true);
+        try (Cursor c = this.db.openCursor(null, 
+                CursorConfig.READ_COMMITTED)) {
+            byte[] low;
+            if (this.fromKey != null) {
+                keyEntry.setData(this.fromKey);
+                if (c.get(keyEntry, dataEntry, Get.SEARCH_GTE, null) 
+                        == null) {
+                    return null;
+                }
+            } else if (c.get(keyEntry, dataEntry, Get.FIRST, null) == null) {
+                return null;
+            }
+            low = bytes(keyEntry);
+            byte[] high;
+            if (this.toKey != null) {
+                high = this.toKey;
+            } else if (c.get(keyEntry, dataEntry, Get.LAST, null) != null) {
+                high = bytes(keyEntry);
+            } else {
+                return null;
+            }
+            keyEntry = new DatabaseEntry(midpoint(low, high));
+            if (c.get(keyEntry, dataEntry, Get.SEARCH_GTE, null) == null) {
+                return null;
+            }
+            byte[] splitKey = bytes(keyEntry);
+            if (BdbMap.compareKeys(splitKey, low) <= 0
+                    || (this.toKey != null 
+                    && BdbMap.compareKeys(splitKey, this.toKey) >= 0)) {
+                return null;
+            }
+            return splitKey;
+        }
+    }
+
+    /**
+     * Returns a key between the given keys in the database's byte order. 
+     * The keys are treated as fractions in base 256, and the midpoint is 
+     * computed over their common prefix and the next eight bytes.
+     * 
+     * @param low the low key.
+     * @param high the high key, which is greater than the low key.
+     * @return a key that is at least the low key and less than the high 
+     * key.
+     */
+    static byte[] midpoint(byte[] low, byte[] high) {
+        int prefix = 0;
+        int n = Math.min(low.length, high.length);
+        while (prefix < n && low[prefix] == high[prefix]) {
+            prefix++;
+        }
+        long lowBits = bits(low, prefix);
+        long highBits = bits(high, prefix);
+        long midBits = lowBits + ((highBits - lowBits) >>> 1);
+        byte[] result = Arrays.copyOf(low, prefix + Long.BYTES);
+        for (int i = 0; i < Long.BYTES; i++) {
+            result[prefix + i] = (byte) (midBits >>> (56 - 8 * i));
+        }
+        return result;
+    }
+
+    private static byte[] bytes(DatabaseEntry entry) {
+        return Arrays.copyOfRange(entry.getData(), entry.getOffset(),
+                entry.getOffset() + entry.getSize());
+    }
+
+    private static long bits(byte[] key, int from) {
+        long result = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            int b = from + i < key.length ? key[from + i] & 0xff : 0;
+            result = (result << 8) | b;
+        }
+        return result;
+    }
+
+    /**
+     * Closes the cursor if it is open. The spliterator has no more 
+     * elements afterward.
+     */
+    @Override
+    public synchronized void close() {
+        this.done = true;
+        if (this.cursor != null) {
+            Cursor c = this.cursor;
+            this.cursor = null;
+            try {
+                c.close();
+            } catch (EnvironmentFailureException ex) {
+                throw new IOError(ex);
+            }
+        }
+    }
+
+    /**
+     * Closes this spliterator's cursor and the cursors of all of the 
+     * spliterators that were split from it or from them. A stream over 
+     * this spliterator should call this method when it is closed.
+     */
+    void closeAll() {
+        IOError error = null;
+        List<BdbCursorSpliterator<T>> toClose;
+        synchronized (this.splits) {
+            toClose = new ArrayList<>(this.splits);
+        }
+        toClose.add(this);
+        for (BdbCursorSpliterator<T> spliterator : toClose) {
+            try {
+                spliterator.close();
+            } catch (IOError err) {
+                if (error == null) {
+                    error = err;
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}
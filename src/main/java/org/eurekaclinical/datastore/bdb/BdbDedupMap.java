@@ -0,0 +1,554 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.EnvironmentFailureException;
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.OperationFailureException;
+import com.sleepycat.je.OperationStatus;
+import com.sleepycat.je.Put;
+import com.sleepycat.je.Transaction;
+import com.sleepycat.util.RuntimeExceptionWrapper;
+import java.io.IOError;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.UnaryOperator;
+
+/**
+ * A Berkeley DB data store that stores each distinct value once. Values are
+ * converted to bytes with the value binding and hashed with SHA-256. The
+ * data store's database maps each key to the hash of its value, and a side
+ * database, named like the data store with {@link #VALUES_SUFFIX} appended,
+ * maps each hash to a reference count and the value's bytes. A value's bytes
+ * are removed when no key refers to them any longer.
+ *
+ * Deduplication costs a hash computation per write and an extra lookup per
+ * read, so it pays off for large values that many keys share. The 
+ * collection views returned by {@link #keySet() }, {@link #values() } and
+ * {@link #entrySet() } are read-only. Writes to a transactional data store
+ * are atomic. Otherwise, a failure part way through a write may leave a 
+ * value's bytes in the side database after the last reference to it is 
+ * gone, but it never removes bytes that are still referenced.
+ *
+ * This implementation is thread-safe.
+ *
+ * @author Andrew Post
+ * @param <K> the key type to store.
+ * @param <V> the value type to store.
+ */
+public class BdbDedupMap<K, V> extends BdbMap<K, V> {
+
+    /**
+     * The suffix of the name of the side database that stores values.
+     */
+    public static final String VALUES_SUFFIX = ".values";
+
+    private static final int REF_COUNT_LENGTH = 4;
+
+    private final Database valueDb;
+    private final EntryBinding<V> storedValueBinding;
+
+    /**
+     * Creates a new deduplicating Berkeley DB data store.
+     * 
+     * @param envInfo the database environment configuration.
+     * @param database the database that maps keys to value hashes.
+     * @param valueDatabase the database that maps value hashes to values.
+     * @param keyBinding the binding for keys. Cannot be <code>null</code>.
+     * @param valueBinding the binding for values. Cannot be 
+     * <code>null</code>.
+     * @param config the data store's options, or <code>null</code> for the
+     * defaults.
+     */
+    BdbDedupMap(BdbEnvironmentInfo envInfo, Database database,
+            Database valueDatabase, EntryBinding<K> keyBinding, 
+            EntryBinding<V> valueBinding, BdbStoreConfig<?, ?> config) {
+        super(envInfo, database, keyBinding, 
+                new ResolvingBinding<>(envInfo.getEnvironment(), valueDatabase,
+                        valueBinding), false, config);
+        this.valueDb = valueDatabase;
+        this.storedValueBinding = valueBinding;
+    }
+
+    @Override
+    public void sync() {
+        super.sync();
+        if (isDeferredWrite()) {
+            syncDatabase(this.valueDb);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (getDatabase()) {
+            if (!isClosed()) {
+                super.close();
+                try {
+                    getEnvironmentInfo().closeAndRemoveDatabaseHandle(
+                            this.valueDb);
+                } catch (EnvironmentFailureException 
+                        | IllegalStateException ex) {
+                    throw new IOError(ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Skips records whose value was removed by a concurrent write after an
+     * unordered scan or a stream read the record's hash, as if the record 
+     * had been written during the scan. The value is read without locking
+     * it, which is safe because a hash always refers to the same bytes.
+     */
+    @Override
+    V scannedValue(DatabaseEntry hashEntry) {
+        DatabaseEntry valueEntry = ResolvingBinding.findValue(null, 
+                this.valueDb, hashEntry, LockMode.READ_UNCOMMITTED);
+        return valueEntry != null 
+                ? this.storedValueBinding.entryToObject(valueEntry) : null;
+    }
+
+    @Override
+    public V get(Object key) {
+        DatabaseEntry keyEntry = toKeyEntry(key);
+        DatabaseEntry hashEntry = new DatabaseEntry();
+        /*
+         * Resolve the hash while the cursor holds a lock on the key, so that
+         * a concurrent write cannot remove the value first.
+         */
+        try (Cursor cursor = getDatabase().openCursor(currentTransaction(), 
+                null)) {
+            if (cursor.getSearchKey(keyEntry, hashEntry, LockMode.DEFAULT)
+                    == OperationStatus.SUCCESS) {
+                return getValueBinding().entryToObject(hashEntry);
+            } else {
+                return null;
+            }
+        } catch (OperationFailureException | EnvironmentFailureException
+                | RuntimeExceptionWrapper ex) {
+            throw new IOError(ex);
+        }
+    }
+
+    @Override
+    public LazyValue<V> getLazy(K key) {
+        DatabaseEntry keyEntry = toKeyEntry(key);
+        DatabaseEntry hashEntry = new DatabaseEntry();
+        Transaction txn = currentTransaction();
+        try (Cursor cursor = getDatabase().openCursor(txn, null)) {
+            if (cursor.getSearchKey(keyEntry, hashEntry, LockMode.DEFAULT)
+                    == OperationStatus.SUCCESS) {
+                DatabaseEntry dataEntry = ResolvingBinding.readValue(txn, 
+                        this.valueDb, hashEntry);
+                return new LazyValue<>(Arrays.copyOfRange(
+                        dataEntry.getData(), dataEntry.getOffset(),
+                        dataEntry.getOffset() + dataEntry.getSize()),
+                        this.storedValueBinding);
+            } else {
+                return null;
+            }
+        } catch (OperationFailureException | EnvironmentFailureException ex) {
+            throw new IOError(ex);
+        }
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return update(key, old -> value, false).getOldValue();
+    }
+
+    /**
+     * Applies a put from a write batch, adding a reference to the new value
+     * before the key refers to it, and removing the reference to the old 
+     * value afterward.
+     *
+     * @param key a key.
+     * @param keyEntry the key's bytes.
+     * @param dataEntry the value's bytes.
+     */
+    @Override
+    void batchPut(K key, DatabaseEntry keyEntry, DatabaseEntry dataEntry) {
+        DatabaseEntry hashEntry = new DatabaseEntry(hash(dataEntry));
+        autoCommit(() -> {
+            Transaction txn = currentTransaction();
+            try {
+                while (true) {
+                    DatabaseEntry oldHashEntry = new DatabaseEntry();
+                    boolean found;
+                    try (Cursor cursor 
+                            = getDatabase().openCursor(txn, null)) {
+                        found = cursor.getSearchKey(keyEntry, oldHashEntry,
+                                LockMode.RMW) == OperationStatus.SUCCESS;
+                        addReference(txn, hashEntry, dataEntry);
+                        if (found) {
+                            cursor.putCurrent(hashEntry);
+                        } else if (cursor.putNoOverwrite(keyEntry, 
+                                hashEntry) != OperationStatus.SUCCESS) {
+                            removeReference(txn, hashEntry);
+                            continue;
+                        }
+                    }
+                    if (found) {
+                        removeReference(txn, oldHashEntry);
+                    }
+                    return null;
+                }
+            } catch (OperationFailureException | EnvironmentFailureException
+                    | UnsupportedOperationException 
+                    | IllegalArgumentException ex) {
+                throw new IOError(ex);
+            }
+        });
+    }
+
+    /**
+     * Applies a remove from a write batch by calling 
+     * {@link #remove(java.lang.Object) }, which maintains the reference 
+     * counts.
+     *
+     * @param key a key.
+     * @param keyEntry the key's bytes.
+     */
+    @Override
+    void batchRemove(K key, DatabaseEntry keyEntry) {
+        remove(key);
+    }
+
+    /**
+     * Returns the binding for the values themselves, so that batched and 
+     * bulk-loaded values can be hashed and counted.
+     * 
+     * @return the value binding.
+     */
+    @Override
+    EntryBinding<V> getStoredValueBinding() {
+        return this.storedValueBinding;
+    }
+
+    /**
+     * Writes a bulk-loaded key with the hash of the given value, and adds a
+     * reference to the value in the side database.
+     * 
+     * @param cursor a cursor on the data store's database in the current 
+     * transaction.
+     * @param keyEntry the key's bytes.
+     * @param dataEntry the value's bytes.
+     */
+    @Override
+    void loadEntry(Cursor cursor, DatabaseEntry keyEntry, 
+            DatabaseEntry dataEntry) {
+        DatabaseEntry hashEntry = new DatabaseEntry(hash(dataEntry));
+        addReference(currentTransaction(), hashEntry, dataEntry);
+        cursor.put(keyEntry, hashEntry, Put.OVERWRITE, null);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return update(key, old -> null, false).getOldValue();
+    }
+
+    /**
+     * Atomically replaces the value of the given key with the result of the
+     * given function, adding a reference to the new value before the key
+     * refers to it, and removing the reference to the old value afterward.
+     * 
+     * @param key a key.
+     * @param function the function.
+     * @param skipSame whether to skip the write if the function returns the
+     * current value object itself.
+     * @return the old and new values.
+     * 
+     * @throws IOError if an error occurs while reading or writing the data
+     * store.
+     */
+    @Override
+    Update<V> update(Object key, UnaryOperator<V> function, 
+            boolean skipSame) {
+        DatabaseEntry keyEntry = toKeyEntry(key);
+        return autoCommit(() -> {
+            Transaction txn = currentTransaction();
+            try {
+                while (true) {
+                    DatabaseEntry oldHashEntry = new DatabaseEntry();
+                    boolean found;
+                    V oldValue;
+                    V newValue;
+                    try (Cursor cursor 
+                            = getDatabase().openCursor(txn, null)) {
+                        found = cursor.getSearchKey(keyEntry, oldHashEntry,
+                                LockMode.RMW) == OperationStatus.SUCCESS;
+                        oldValue = found 
+                                ? getValueBinding().entryToObject(oldHashEntry)
+                                : null;
+                        newValue = function.apply(oldValue);
+                        if (newValue == null ? !found 
+                                : skipSame && newValue == oldValue) {
+                            return new Update<>(oldValue, newValue);
+                        }
+                        if (newValue == null) {
+                            cursor.delete();
+                        } else {
+                            DatabaseEntry valueEntry = new DatabaseEntry();
+                            this.storedValueBinding.objectToEntry(newValue,
+                                    valueEntry);
+                            DatabaseEntry hashEntry 
+                                    = new DatabaseEntry(hash(valueEntry));
+                            addReference(txn, hashEntry, valueEntry);
+                            if (found) {
+                                cursor.putCurrent(hashEntry);
+                            } else if (cursor.putNoOverwrite(keyEntry, 
+                                    hashEntry) != OperationStatus.SUCCESS) {
+                                removeReference(txn, hashEntry);
+                                continue;
+                            }
+                        }
+                    }
+                    if (found) {
+                        removeReference(txn, oldHashEntry);
+                    }
+                    return new Update<>(oldValue, newValue);
+                }
+            } catch (OperationFailureException | EnvironmentFailureException
+                    | RuntimeExceptionWrapper | UnsupportedOperationException
+                    | IllegalArgumentException ex) {
+                throw new IOError(ex);
+            }
+        });
+    }
+
+    @Override
+    public void clear() {
+        removeRange(null, null);
+    }
+
+    /**
+     * Removes the given keys, in one transaction if the data store is 
+     * transactional.
+     * 
+     * @param keys the keys to remove.
+     * @return the number of keys that were in the data store and were 
+     * removed.
+     * 
+     * @throws IOError if an error occurred while removing the keys.
+     */
+    @Override
+    public int removeAll(Collection<? extends K> keys) {
+        return autoCommit(() -> {
+            int count = 0;
+            for (K key : keys) {
+                if (remove(key) != null) {
+                    count++;
+                }
+            }
+            return count;
+        });
+    }
+
+    @Override
+    public int removeRange(K fromKey, K toKey) {
+        return deleteRange(fromKey, toKey, 
+                hashEntry -> removeReference(currentTransaction(), hashEntry));
+    }
+
+    /**
+     * Returns whether the given value is in the data store by looking up 
+     * its hash in the side database. A value is in the side database only
+     * while at least one key refers to it, so no keys are scanned.
+     * 
+     * @param value a value.
+     * @return <code>true</code> or <code>false</code>.
+     * 
+     * @throws IOError if an error occurs while checking the data store.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean containsValue(Object value) {
+        if (value == null) {
+            return false;
+        }
+        DatabaseEntry valueEntry = new DatabaseEntry();
+        DatabaseEntry countEntry = new DatabaseEntry();
+        countEntry.setPartial(0, REF_COUNT_LENGTH, true);
+        try {
+            this.storedValueBinding.objectToEntry((V) value, valueEntry);
+            return this.valueDb.get(currentTransaction(), 
+                    new DatabaseEntry(hash(valueEntry)), countEntry,
+                    LockMode.DEFAULT) == OperationStatus.SUCCESS
+                    && readCount(countEntry) > 0;
+        } catch (OperationFailureException | EnvironmentFailureException
+                | RuntimeExceptionWrapper | IllegalArgumentException 
+                | ClassCastException ex) {
+            throw new IOError(ex);
+        }
+    }
+
+    /**
+     * Returns the number of distinct values in the data store.
+     *
+     * @return the number of distinct values.
+     * 
+     * @throws IOError if an error occurs while counting the values.
+     */
+    public long distinctValueCount() {
+        try {
+            return this.valueDb.count();
+        } catch (OperationFailureException | EnvironmentFailureException ex) {
+            throw new IOError(ex);
+        }
+    }
+
+    private void addReference(Transaction txn, DatabaseEntry hashEntry,
+            DatabaseEntry valueEntry) {
+        DatabaseEntry countEntry = new DatabaseEntry();
+        countEntry.setPartial(0, REF_COUNT_LENGTH, true);
+        try (Cursor cursor = this.valueDb.openCursor(txn, null)) {
+            while (true) {
+                if (cursor.getSearchKey(hashEntry, countEntry, LockMode.RMW)
+                        == OperationStatus.SUCCESS) {
+                    cursor.putCurrent(
+                            countEntry(readCount(countEntry) + 1));
+                    return;
+                }
+                byte[] data = new byte[REF_COUNT_LENGTH + valueEntry.getSize()];
+                writeCount(1, data);
+                System.arraycopy(valueEntry.getData(), valueEntry.getOffset(),
+                        data, REF_COUNT_LENGTH, valueEntry.getSize());
+                if (cursor.putNoOverwrite(hashEntry, new DatabaseEntry(data))
+                        == OperationStatus.SUCCESS) {
+                    return;
+                }
+                // Another thread added the value first, so count it instead.
+            }
+        }
+    }
+
+    private void removeReference(Transaction txn, DatabaseEntry hashEntry) {
+        DatabaseEntry countEntry = new DatabaseEntry();
+        countEntry.setPartial(0, REF_COUNT_LENGTH, true);
+        try (Cursor cursor = this.valueDb.openCursor(txn, null)) {
+            if (cursor.getSearchKey(hashEntry, countEntry, LockMode.RMW)
+                    == OperationStatus.SUCCESS) {
+                int count = readCount(countEntry);
+                if (count > 1) {
+                    cursor.putCurrent(countEntry(count - 1));
+                } else {
+                    cursor.delete();
+                }
+            }
+        }
+    }
+
+    private static DatabaseEntry countEntry(int count) {
+        byte[] data = new byte[REF_COUNT_LENGTH];
+        writeCount(count, data);
+        DatabaseEntry countEntry = new DatabaseEntry(data);
+        countEntry.setPartial(0, REF_COUNT_LENGTH, true);
+        return countEntry;
+    }
+
+    private static int readCount(DatabaseEntry countEntry) {
+        byte[] data = countEntry.getData();
+        int off = countEntry.getOffset();
+        return ((data[off] & 0xff) << 24) | ((data[off + 1] & 0xff) << 16)
+                | ((data[off + 2] & 0xff) << 8) | (data[off + 3] & 0xff);
+    }
+
+    private static void writeCount(int count, byte[] data) {
+        data[0] = (byte) (count >>> 24);
+        data[1] = (byte) (count >>> 16);
+        data[2] = (byte) (count >>> 8);
+        data[3] = (byte) count;
+    }
+
+    private static byte[] hash(DatabaseEntry valueEntry) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(valueEntry.getData(), valueEntry.getOffset(),
+                    valueEntry.getSize());
+            return digest.digest();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new AssertionError("SHA-256 is always available", ex);
+        }
+    }
+
+    /**
+     * Converts the value hashes in the data store's database to values by
+     * looking them up in the side database.
+     */
+    private static final class ResolvingBinding<V> 
+            implements EntryBinding<V> {
+
+        private final Environment env;
+        private final Database valueDb;
+        private final EntryBinding<V> valueBinding;
+
+        ResolvingBinding(Environment env, Database valueDb,
+                EntryBinding<V> valueBinding) {
+            this.env = env;
+            this.valueDb = valueDb;
+            this.valueBinding = valueBinding;
+        }
+
+        @Override
+        public V entryToObject(DatabaseEntry hashEntry) {
+            Transaction txn = this.valueDb.getConfig().getTransactional()
+                    ? currentTransaction(this.env) : null;
+            return this.valueBinding.entryToObject(
+                    readValue(txn, this.valueDb, hashEntry));
+        }
+
+        @Override
+        public void objectToEntry(V object, DatabaseEntry entry) {
+            throw new UnsupportedOperationException(
+                    "Values must be written with BdbDedupMap.put");
+        }
+
+        static DatabaseEntry readValue(Transaction txn, Database valueDb,
+                DatabaseEntry hashEntry) {
+            DatabaseEntry valueEntry = findValue(txn, valueDb, hashEntry, 
+                    LockMode.DEFAULT);
+            if (valueEntry == null) {
+                throw new IllegalStateException("No value with hash " 
+                        + Arrays.toString(hashEntry.getData()));
+            }
+            return valueEntry;
+        }
+
+        static DatabaseEntry findValue(Transaction txn, Database valueDb,
+                DatabaseEntry hashEntry, LockMode lockMode) {
+            DatabaseEntry dataEntry = new DatabaseEntry();
+            if (valueDb.get(txn, hashEntry, dataEntry, lockMode)
+                    != OperationStatus.SUCCESS) {
+                return null;
+            }
+            return new DatabaseEntry(dataEntry.getData(),
+                    dataEntry.getOffset() + REF_COUNT_LENGTH,
+                    dataEntry.getSize() - REF_COUNT_LENGTH);
+        }
+    }
+}
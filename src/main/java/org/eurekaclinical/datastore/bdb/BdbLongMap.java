@@ -0,0 +1,107 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.bind.tuple.LongBinding;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.util.RuntimeExceptionWrapper;
+import java.io.IOError;
+import org.eurekaclinical.datastore.LongKeyDataStore;
+
+/**
+ * A Berkeley DB data store with <code>long</code> keys. Keys are stored as 8
+ * bytes in big-endian order with the sign bit flipped, so the database's
+ * byte order matches the keys' numeric order. The primitive 
+ * <code>long</code> methods read and write the database directly without
+ * boxing the key.
+ *
+ * This implementation is thread-safe.
+ *
+ * @author Andrew Post
+ * @param <V> the value type to store.
+ */
+public class BdbLongMap<V> extends BdbMap<Long, V> 
+        implements LongKeyDataStore<V> {
+
+    /**
+     * Creates a new long-keyed Berkeley DB data store.
+     * 
+     * @param envInfo the database environment configuration.
+     * @param database the database.
+     * @param valueBinding the binding for values. Cannot be 
+     * <code>null</code>.
+     * @param config the data store's options, or <code>null</code> for the
+     * defaults.
+     */
+    BdbLongMap(BdbEnvironmentInfo envInfo, Database database,
+            EntryBinding<V> valueBinding, BdbStoreConfig<?, ?> config) {
+        super(envInfo, database, new LongBinding(), valueBinding, config);
+    }
+
+    @Override
+    public V get(long key) {
+        return getEntry(keyEntry(key));
+    }
+
+    /**
+     * Returns the value corresponding to the given key without converting it
+     * from bytes. Conversion happens when {@link LazyValue#get() } is called.
+     * 
+     * @param key a key.
+     * @return the value, or <code>null</code> if the key is not in the data
+     * store.
+     * 
+     * @throws IOError if an error occurs getting the value corresponding to
+     * the given key.
+     */
+    public LazyValue<V> getLazy(long key) {
+        return getLazy(keyEntry(key));
+    }
+
+    @Override
+    public V put(long key, V value) {
+        DatabaseEntry dataEntry = new DatabaseEntry();
+        try {
+            getValueBinding().objectToEntry(value, dataEntry);
+        } catch (RuntimeExceptionWrapper ex) {
+            throw new IOError(ex);
+        }
+        return putEntry(keyEntry(key), dataEntry);
+    }
+
+    @Override
+    public V remove(long key) {
+        return removeEntry(keyEntry(key));
+    }
+
+    @Override
+    public boolean containsKey(long key) {
+        return containsEntry(keyEntry(key));
+    }
+
+    private static DatabaseEntry keyEntry(long key) {
+        DatabaseEntry keyEntry = new DatabaseEntry();
+        LongBinding.longToEntry(key, keyEntry);
+        return keyEntry;
+    }
+}
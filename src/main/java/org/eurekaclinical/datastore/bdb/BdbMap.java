@@ -19,21 +19,63 @@ package org.eurekaclinical.datastore.bdb;
  * limitations under the License.
  * #L%
  */
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.sleepycat.bind.EntryBinding;
-import com.sleepycat.bind.serial.SerialBinding;
-import com.sleepycat.bind.serial.StoredClassCatalog;
+import com.sleepycat.collections.CurrentTransaction;
 import com.sleepycat.collections.StoredMap;
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.CursorConfig;
 import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseConfig;
+import com.sleepycat.je.DatabaseEntry;
 import com.sleepycat.je.DatabaseException;
+import com.sleepycat.je.DiskOrderedCursor;
+import com.sleepycat.je.DiskOrderedCursorConfig;
+import com.sleepycat.je.Durability;
+import com.sleepycat.je.Environment;
 import com.sleepycat.je.EnvironmentFailureException;
+import com.sleepycat.je.Get;
+import com.sleepycat.je.LockMode;
 import com.sleepycat.je.OperationFailureException;
+import com.sleepycat.je.OperationResult;
+import com.sleepycat.je.OperationStatus;
+import com.sleepycat.je.Put;
+import com.sleepycat.je.ReadOptions;
+import com.sleepycat.je.Transaction;
+import com.sleepycat.je.TransactionConfig;
 import com.sleepycat.util.RuntimeExceptionWrapper;
 import java.io.IOError;
 import org.eurekaclinical.datastore.DataStore;
+import org.eurekaclinical.datastore.WriteBatch;
 
 /**
  * A Berkeley DB implementation of the DataStore interface.
@@ -46,32 +88,141 @@ import org.eurekaclinical.datastore.DataStore;
  */
 public class BdbMap<K, V> implements DataStore<K, V> {
 
+    private static final Logger LOGGER
+            = Logger.getLogger(BdbMap.class.getPackage().getName());
+
+    /**
+     * The number of keys that a key set iterator reads with a cursor at a
+     * time.
+     */
+    private static final int KEY_BLOCK_SIZE = 100;
+
     private final Database db;
     private final StoredMap<K, V> storedMap;
+    private final EntryBinding<K> keyBinding;
+    private final EntryBinding<V> valueBinding;
+    private final boolean transactional;
+    private final boolean deferredWrite;
+    private final int batchCommitSize;
+    private final TransactionConfig txnConfig;
+    private final int encodingThreads;
+    private final boolean writeAllowed;
+    private final ExecutorService encoder;
     private boolean isClosed;
     private BdbEnvironmentInfo envInfo;
 
+    /**
+     * A creates a new Berkeley DB instance with the default options.
+     * 
+     * @param envInfo the database environment configuration.
+     * @param database the database.
+     * @param keyBinding the binding for keys. Cannot be <code>null</code>.
+     * @param valueBinding the binding for values. Cannot be 
+     * <code>null</code>.
+     * 
+     * @throws DatabaseException if any database-related exception occurred.
+     */
+    BdbMap(BdbEnvironmentInfo envInfo, Database database,
+            EntryBinding<K> keyBinding, EntryBinding<V> valueBinding) {
+        this(envInfo, database, keyBinding, valueBinding, null);
+    }
+
     /**
      * A creates a new Berkeley DB instance.
      * 
      * @param envInfo the database environment configuration.
      * @param database the database.
+     * @param keyBinding the binding for keys. Cannot be <code>null</code>.
+     * @param valueBinding the binding for values. Cannot be 
+     * <code>null</code>.
+     * @param config the data store's options, or <code>null</code> for the
+     * defaults. Bindings are taken from the other parameters, not from the
+     * config.
+     * 
+     * @throws DatabaseException if any database-related exception occurred.
+     */
+    BdbMap(BdbEnvironmentInfo envInfo, Database database,
+            EntryBinding<K> keyBinding, EntryBinding<V> valueBinding,
+            BdbStoreConfig<?, ?> config) {
+        this(envInfo, database, keyBinding, valueBinding, true, config);
+    }
+
+    /**
+     * A creates a new Berkeley DB instance, optionally with read-only 
+     * collection views.
+     * 
+     * @param envInfo the database environment configuration.
+     * @param database the database.
+     * @param keyBinding the binding for keys. Cannot be <code>null</code>.
+     * @param valueBinding the binding for values. Cannot be 
+     * <code>null</code>.
+     * @param writeAllowed <code>false</code> if writes through the stored
+     * map and its views are not allowed, in which case subclasses must 
+     * override the methods that write.
+     * @param config the data store's options, or <code>null</code> for the
+     * defaults. Bindings are taken from the other parameters, not from the
+     * config.
      * 
      * @throws DatabaseException if any database-related exception occurred.
      */
-    BdbMap(BdbEnvironmentInfo envInfo, Database database) {
+    BdbMap(BdbEnvironmentInfo envInfo, Database database,
+            EntryBinding<K> keyBinding, EntryBinding<V> valueBinding,
+            boolean writeAllowed, BdbStoreConfig<?, ?> config) {
+        assert keyBinding != null : "keyBinding cannot be null";
+        assert valueBinding != null : "valueBinding cannot be null";
         this.db = database;
         this.envInfo = envInfo;
-        StoredClassCatalog catalog = envInfo.getClassCatalog();
-        EntryBinding<K> kBinding = new SerialBinding<>(catalog, null);
-        EntryBinding<V> vBinding = new SerialBinding<>(catalog, null);
-        this.storedMap = new StoredMap<>(this.db, kBinding, vBinding, true);
+        this.keyBinding = keyBinding;
+        this.valueBinding = valueBinding;
+        this.storedMap = new StoredMap<>(this.db, this.keyBinding, 
+                this.valueBinding, writeAllowed);
+        this.writeAllowed = writeAllowed;
+        DatabaseConfig dbConfig = this.db.getConfig();
+        this.transactional = dbConfig.getTransactional();
+        this.deferredWrite = dbConfig.getDeferredWrite();
+        this.batchCommitSize = config != null ? config.getBatchCommitSize()
+                : BdbStoreConfig.DEFAULT_BATCH_COMMIT_SIZE;
+        Durability durability 
+                = config != null ? config.getDurability() : null;
+        this.txnConfig = durability != null
+                ? new TransactionConfig().setDurability(durability) : null;
+        this.encodingThreads = config != null 
+                ? config.getEncodingThreads() : 1;
+        this.encoder = this.encodingThreads > 1
+                ? Executors.newFixedThreadPool(this.encodingThreads, r -> {
+                    Thread thread = new Thread(r, "BdbMap encoder " 
+                            + database.getDatabaseName());
+                    thread.setDaemon(true);
+                    return thread;
+                }) : null;
+    }
+
+    /**
+     * Writes the data store's changes to disk if its database is 
+     * deferred-write. Otherwise, it does nothing.
+     * 
+     * @throws IOError if an error occurs while writing to disk.
+     */
+    public void sync() {
+        if (this.deferredWrite) {
+            syncDatabase(this.db);
+        }
     }
 
+    /**
+     * Closes the data store, after writing its changes to disk if its 
+     * database is deferred-write.
+     * 
+     * @throws IOError if an error occurs while closing the data store.
+     */
     @Override
     public void close() {
         synchronized (this.db) {
             if (!this.isClosed) {
+                if (this.encoder != null) {
+                    this.encoder.shutdown();
+                }
+                sync();
                 try {
                     this.envInfo.closeAndRemoveDatabaseHandle(this.db);
                 } catch (EnvironmentFailureException | IllegalStateException ex) {
@@ -91,22 +242,21 @@ public class BdbMap<K, V> implements DataStore<K, V> {
 
     @Override
     public void clear() {
-        try {
-            this.storedMap.clear();
-        } catch (OperationFailureException | EnvironmentFailureException
-                | RuntimeExceptionWrapper | UnsupportedOperationException ex) {
-            throw new IOError(ex);
-        }
+        autoCommit(() -> {
+            try {
+                this.storedMap.clear();
+                return null;
+            } catch (OperationFailureException | EnvironmentFailureException
+                    | RuntimeExceptionWrapper 
+                    | UnsupportedOperationException ex) {
+                throw new IOError(ex);
+            }
+        });
     }
 
     @Override
     public boolean containsKey(Object arg0) {
-        try {
-            return this.storedMap.containsKey(arg0);
-        } catch (OperationFailureException | EnvironmentFailureException
-                | RuntimeExceptionWrapper ex) {
-            throw new IOError(ex);
-        }
+        return containsEntry(toKeyEntry(arg0));
     }
 
     @Override
@@ -138,54 +288,604 @@ public class BdbMap<K, V> implements DataStore<K, V> {
         }
     }
 
+    /**
+     * Returns a stream of the data store's key-value pairs in key order. 
+     * The stream reads the database with one cursor, which is opened when 
+     * the stream starts and closed when the stream is exhausted, fails or
+     * is closed, so a stream that is not consumed entirely should be closed,
+     * for example with a try-with-resources statement. The cursor reads 
+     * committed data without holding locks on the records that it has 
+     * passed, so it does not block writers. The entries are read-only.
+     * 
+     * A parallel stream splits the database into key ranges at sampled 
+     * keys, and each range is scanned by its own cursor, unless the current
+     * thread has a transaction, in which case the stream is scanned by one
+     * thread.
+     * 
+     * @return a stream of key-value pairs.
+     */
     @Override
-    public boolean isEmpty() {
+    public Stream<Map.Entry<K, V>> stream() {
+        return stream((keyEntry, dataEntry) -> {
+            K key = this.keyBinding.entryToObject(keyEntry);
+            V value = scannedValue(dataEntry);
+            return value != null 
+                    ? new AbstractMap.SimpleImmutableEntry<>(key, value) 
+                    : null;
+        }, false);
+    }
+
+    /**
+     * Returns a stream of the data store's keys in key order. It reads the
+     * database like {@link #stream() }, but without the records' data.
+     * 
+     * @return a stream of keys.
+     */
+    @Override
+    public Stream<K> keyStream() {
+        return stream((keyEntry, dataEntry) 
+                -> this.keyBinding.entryToObject(keyEntry), true);
+    }
+
+    /**
+     * Returns a stream of the data store's values in key order. It reads 
+     * the database like {@link #stream() }.
+     * 
+     * @return a stream of values.
+     */
+    @Override
+    public Stream<V> valueStream() {
+        return stream((keyEntry, dataEntry) -> scannedValue(dataEntry), 
+                false);
+    }
+
+    /**
+     * Passes each of the data store's keys and values to the given 
+     * consumer, in the order in which the records are stored in the log 
+     * files rather than in key order. The records are read with a 
+     * {@link DiskOrderedCursor}, which reads the log files sequentially, so
+     * a full pass over a data store that is not in the cache is much 
+     * faster than iterating over it. The scan does not lock records: 
+     * records that are written during the scan may or may not be passed to
+     * the consumer, and uncommitted records may be.
+     * 
+     * @param consumer the consumer of the keys and values.
+     * 
+     * @throws IOError if an error occurs while reading the data store.
+     */
+    public void scanUnordered(BiConsumer<? super K, ? super V> consumer) {
+        scanUnordered(Collections.singletonList(this), consumer);
+    }
+
+    /**
+     * Passes each of the keys and values of the given data stores, which 
+     * must be in the same environment, to the given consumer, in the order
+     * in which the records are stored in the log files. See 
+     * {@link #scanUnordered(java.util.function.BiConsumer) }.
+     * 
+     * @param <K> the key type.
+     * @param <V> the value type.
+     * @param stores the data stores. Cannot be empty.
+     * @param consumer the consumer of the keys and values.
+     * 
+     * @throws IOError if an error occurs while reading the data stores.
+     */
+    static <K, V> void scanUnordered(List<? extends BdbMap<K, V>> stores,
+            BiConsumer<? super K, ? super V> consumer) {
+        Map<Database, BdbMap<K, V>> storesByDatabase 
+                = new IdentityHashMap<>();
+        Database[] databases = new Database[stores.size()];
+        for (int i = 0; i < databases.length; i++) {
+            BdbMap<K, V> store = stores.get(i);
+            databases[i] = store.db;
+            storesByDatabase.put(store.db, store);
+        }
+        DatabaseEntry keyEntry = new DatabaseEntry();
+        DatabaseEntry dataEntry = new DatabaseEntry();
+        DiskOrderedCursor cursor;
         try {
-            return this.storedMap.isEmpty();
+            cursor = databases[0].getEnvironment().openDiskOrderedCursor(
+                    databases, new DiskOrderedCursorConfig());
         } catch (OperationFailureException | EnvironmentFailureException
-                | RuntimeExceptionWrapper | UnsupportedOperationException ex) {
+                | IllegalStateException ex) {
             throw new IOError(ex);
         }
+        try {
+            while (true) {
+                K key;
+                V value;
+                try {
+                    if (cursor.getNext(keyEntry, dataEntry,
+                            LockMode.READ_UNCOMMITTED) 
+                            != OperationStatus.SUCCESS) {
+                        break;
+                    }
+                    BdbMap<K, V> store = databases.length == 1 
+                            ? stores.get(0)
+                            : storesByDatabase.get(cursor.getDatabase());
+                    key = store.keyBinding.entryToObject(keyEntry);
+                    value = store.scannedValue(dataEntry);
+                } catch (OperationFailureException 
+                        | EnvironmentFailureException
+                        | RuntimeExceptionWrapper | IllegalStateException ex) {
+                    throw new IOError(ex);
+                }
+                if (value != null) {
+                    consumer.accept(key, value);
+                }
+            }
+        } finally {
+            try {
+                cursor.close();
+            } catch (EnvironmentFailureException ex) {
+                throw new IOError(ex);
+            }
+        }
     }
 
-    @Override
-    public Set<K> keySet() {
+    /**
+     * Converts the data of a record that was read without a lock on its key,
+     * by an unordered scan or a stream, to a value.
+     * 
+     * @param dataEntry the record's data.
+     * @return the value, or <code>null</code> if the record should be 
+     * skipped because it changed during the scan.
+     */
+    V scannedValue(DatabaseEntry dataEntry) {
+        return this.valueBinding.entryToObject(dataEntry);
+    }
+
+    /**
+     * Returns a stream of the given function's results for the records in
+     * the database, in key order, in the current transaction.
+     * 
+     * @param <T> the stream's element type.
+     * @param reader the function, which is called with each record's key 
+     * and data, and returns <code>null</code> to skip the record.
+     * @param keysOnly <code>true</code> to read the keys only, in which case
+     * the data passed to the function is empty.
+     * @return the stream.
+     */
+    final <T> Stream<T> stream(
+            BiFunction<DatabaseEntry, DatabaseEntry, T> reader, 
+            boolean keysOnly) {
+        BdbCursorSpliterator<T> spliterator = new BdbCursorSpliterator<>(
+                this.db, currentTransaction(), reader, keysOnly);
+        return StreamSupport.stream(spliterator, false)
+                .onClose(spliterator::closeAll);
+    }
+
+    /**
+     * Returns the value corresponding to the given key without converting it
+     * from bytes. Conversion happens when {@link LazyValue#get() } is called.
+     * 
+     * @param key a key.
+     * @return the value, or <code>null</code> if the key is not in the data
+     * store.
+     * 
+     * @throws IOError if an error occurs getting the value corresponding to
+     * the given key.
+     */
+    public LazyValue<V> getLazy(K key) {
         try {
-            return this.storedMap.keySet();
+            DatabaseEntry keyEntry = new DatabaseEntry();
+            this.keyBinding.objectToEntry(key, keyEntry);
+            return getLazy(keyEntry);
         } catch (RuntimeExceptionWrapper ex) {
             throw new IOError(ex);
         }
     }
 
-    @Override
-    public V put(K arg0, V arg1) {
+    /**
+     * Returns the value corresponding to the given key bytes without 
+     * converting it from bytes.
+     * 
+     * @param keyEntry the key's bytes.
+     * @return the value, or <code>null</code> if the key is not in the data
+     * store.
+     * 
+     * @throws IOError if an error occurs getting the value corresponding to
+     * the given key.
+     */
+    final LazyValue<V> getLazy(DatabaseEntry keyEntry) {
+        DatabaseEntry dataEntry = new DatabaseEntry();
         try {
-            return this.storedMap.put(arg0, arg1);
-        } catch (OperationFailureException | EnvironmentFailureException
-                | RuntimeExceptionWrapper | UnsupportedOperationException
-                | IllegalArgumentException ex) {
+            if (this.db.get(currentTransaction(), keyEntry, dataEntry,
+                    LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+                return new LazyValue<>(dataEntry.getData(), this.valueBinding);
+            } else {
+                return null;
+            }
+        } catch (OperationFailureException | EnvironmentFailureException ex) {
             throw new IOError(ex);
         }
     }
 
     @Override
-    public void putAll(Map<? extends K, ? extends V> arg0) {
+    public boolean isEmpty() {
         try {
-            this.storedMap.putAll(arg0);
+            return this.storedMap.isEmpty();
         } catch (OperationFailureException | EnvironmentFailureException
                 | RuntimeExceptionWrapper | UnsupportedOperationException ex) {
             throw new IOError(ex);
         }
     }
 
+    /**
+     * Returns a view of the data store's keys in key order. The view reads
+     * keys only, without the records' data. Its iterators read the keys in
+     * blocks with a cursor that is closed after each block, so they need 
+     * not be closed. Keys can be removed through the view and its 
+     * iterators if the data store allows writes through its views, but not
+     * added.
+     * 
+     * @return the keys.
+     */
+    @Override
+    public Set<K> keySet() {
+        return new KeySet();
+    }
+
+    @Override
+    public V put(K arg0, V arg1) {
+        return autoCommit(() -> {
+            try {
+                return this.storedMap.put(arg0, arg1);
+            } catch (OperationFailureException | EnvironmentFailureException
+                    | RuntimeExceptionWrapper | UnsupportedOperationException
+                    | IllegalArgumentException ex) {
+                throw new IOError(ex);
+            }
+        });
+    }
+
+    /**
+     * Copies all of the key-value pairs from the given map into the data 
+     * store by applying them as a write batch, without reading the values 
+     * that they replace.
+     * 
+     * @param arg0 a map.
+     * 
+     * @throws IOError if an error occurs while writing the map to the data
+     * store.
+     */
+    @Override
+    public void putAll(Map<? extends K, ? extends V> arg0) {
+        write(new WriteBatch<K, V>().putAll(arg0));
+    }
+
+    /**
+     * Applies the puts and removes in the given batch, in order, without 
+     * reading the values that they replace. If the data store is 
+     * transactional and the current thread has no transaction, the batch is
+     * applied in transactions of at most 
+     * {@link BdbStoreConfig#getBatchCommitSize() } operations each, and an
+     * error leaves the transactions before the failed one committed. In a 
+     * caller's transaction, the whole batch is applied in that transaction.
+     * The keys and values of each chunk of 
+     * {@link BdbStoreConfig#getBatchCommitSize() } operations are converted
+     * to bytes before the chunk is written; if the data store has more than
+     * one encoding thread (see 
+     * {@link BdbStoreConfig#setEncodingThreads(int) }), the next chunk is 
+     * converted in parallel while the current chunk is written.
+     * 
+     * @param batch a batch of operations.
+     * 
+     * @throws IOError if an error occurs while applying the batch.
+     */
+    @Override
+    public void write(WriteBatch<K, V> batch) {
+        List<WriteBatch.Operation<K, V>> operations = batch.getOperations();
+        int n = operations.size();
+        Encoding<EncodedOperation<K>> next = encode(
+                operations.subList(0, Math.min(n, this.batchCommitSize)),
+                this::encodeOperation);
+        for (int from = 0; from < n; from += this.batchCommitSize) {
+            List<EncodedOperation<K>> chunk = next.get();
+            int nextFrom = from + this.batchCommitSize;
+            next = encode(operations.subList(Math.min(n, nextFrom),
+                    Math.min(n, nextFrom + this.batchCommitSize)),
+                    this::encodeOperation);
+            try {
+                autoCommit(() -> {
+                    apply(chunk);
+                    return null;
+                });
+            } catch (IOError | RuntimeException ex) {
+                next.cancel();
+                throw ex;
+            }
+        }
+    }
+
     @Override
     public V remove(Object arg0) {
-        try {
-            return this.storedMap.remove(arg0);
+        return autoCommit(() -> {
+            try {
+                return this.storedMap.remove(arg0);
+            } catch (OperationFailureException | EnvironmentFailureException
+                    | RuntimeExceptionWrapper 
+                    | UnsupportedOperationException ex) {
+                throw new IOError(ex);
+            }
+        });
+    }
+
+    /**
+     * Removes the given keys in one pass over the database, in one 
+     * transaction if the data store is transactional. The keys are sorted 
+     * in the database's order first, so that neighboring keys are removed
+     * one after the other, and the removed values are not read.
+     * 
+     * @param keys the keys to remove.
+     * @return the number of keys that were in the data store and were 
+     * removed.
+     * 
+     * @throws IOError if an error occurred while removing the keys.
+     */
+    @Override
+    public int removeAll(Collection<? extends K> keys) {
+        List<Map.Entry<byte[], K>> sortedKeys = sortKeys(keys);
+        ReadOptions rmw = new ReadOptions().setLockMode(LockMode.RMW);
+        return autoCommit(() -> {
+            int count = 0;
+            DatabaseEntry dataEntry = new DatabaseEntry();
+            dataEntry.setPartial(0, 0, true);
+            byte[] previousKey = null;
+            try (Cursor cursor 
+                    = this.db.openCursor(currentTransaction(), null)) {
+                for (Map.Entry<byte[], K> me : sortedKeys) {
+                    byte[] key = me.getKey();
+                    if (!Arrays.equals(key, previousKey) && cursor.get(
+                            new DatabaseEntry(key), dataEntry, Get.SEARCH,
+                            rmw) != null) {
+                        cursor.delete();
+                        count++;
+                    }
+                    previousKey = key;
+                }
+            } catch (OperationFailureException | EnvironmentFailureException
+                    | UnsupportedOperationException ex) {
+                throw new IOError(ex);
+            }
+            return count;
+        });
+    }
+
+    /**
+     * Returns the values of the given keys, looking them up in the 
+     * database's key order with one cursor. Neighboring keys are often in
+     * the same B-tree node, and a key that immediately follows the previous
+     * one is read without a search.
+     * 
+     * @param keys the keys.
+     * @return a map from each key that is in the data store to its value, 
+     * in the database's key order.
+     * 
+     * @throws IOError if an error occurs getting the values.
+     */
+    @Override
+    public Map<K, V> getAll(Collection<? extends K> keys) {
+        List<Map.Entry<byte[], K>> sortedKeys = sortKeys(keys);
+        Map<K, V> result = new LinkedHashMap<>();
+        DatabaseEntry keyEntry = new DatabaseEntry();
+        DatabaseEntry dataEntry = new DatabaseEntry();
+        try (Cursor cursor = this.db.openCursor(currentTransaction(), null)) {
+            boolean positioned = false;
+            for (Map.Entry<byte[], K> me : sortedKeys) {
+                DatabaseEntry target = new DatabaseEntry(me.getKey());
+                int cmp = -1;
+                if (positioned) {
+                    cmp = compareKeys(keyEntry, target);
+                    if (cmp < 0) {
+                        if (cursor.get(keyEntry, dataEntry, Get.NEXT, null) 
+                                == null) {
+                            break;
+                        }
+                        cmp = compareKeys(keyEntry, target);
+                    }
+                }
+                if (cmp < 0) {
+                    keyEntry = new DatabaseEntry(me.getKey());
+                    if (cursor.get(keyEntry, dataEntry, Get.SEARCH_GTE, null)
+                            == null) {
+                        break;
+                    }
+                    positioned = true;
+                    cmp = compareKeys(keyEntry, target);
+                }
+                if (cmp == 0) {
+                    result.put(me.getValue(), 
+                            this.valueBinding.entryToObject(dataEntry));
+                }
+            }
         } catch (OperationFailureException | EnvironmentFailureException
-                | RuntimeExceptionWrapper | UnsupportedOperationException ex) {
+                | RuntimeExceptionWrapper ex) {
             throw new IOError(ex);
         }
+        return result;
+    }
+
+    /**
+     * Removes the keys from <code>fromKey</code>, inclusive, to 
+     * <code>toKey</code>, exclusive, in one pass over the database, in one 
+     * transaction if the data store is transactional. Keys are compared by 
+     * their bytes, so this is meaningful only for key bindings that preserve
+     * order, such as those in {@link BdbBindings} and 
+     * {@link CompositeKeyBinding}. The removed values are not read.
+     * 
+     * @param fromKey the first key to remove, or <code>null</code> to start
+     * with the first key in the data store.
+     * @param toKey the key after the last key to remove, or 
+     * <code>null</code> to remove through the last key in the data store.
+     * @return the number of keys that were removed.
+     * 
+     * @throws IOError if an error occurred while removing the keys.
+     */
+    public int removeRange(K fromKey, K toKey) {
+        return deleteRange(fromKey, toKey, null);
+    }
+
+    /**
+     * If the given key is not in the data store, puts the given value. The
+     * check and the write are atomic.
+     * 
+     * @param key a key.
+     * @param value a value. Cannot be <code>null</code>.
+     * @return the existing value, or <code>null</code> if there was none.
+     * 
+     * @throws IOError if an error occurs while reading or writing the data
+     * store.
+     */
+    @Override
+    public V putIfAbsent(K key, V value) {
+        Objects.requireNonNull(value);
+        return update(key, old -> old != null ? old : value, true)
+                .getOldValue();
+    }
+
+    /**
+     * Removes the given key if its value equals the given value. The check
+     * and the removal are atomic.
+     * 
+     * @param key a key.
+     * @param value a value.
+     * @return whether the key was removed.
+     * 
+     * @throws IOError if an error occurs while reading or writing the data
+     * store.
+     */
+    @Override
+    public boolean remove(Object key, Object value) {
+        Update<V> update = update(key, 
+                old -> old != null && old.equals(value) ? null : old, true);
+        return update.getOldValue() != null && update.getNewValue() == null;
+    }
+
+    /**
+     * Replaces the value of the given key if its value equals the given old
+     * value. The check and the write are atomic.
+     * 
+     * @param key a key.
+     * @param oldValue the expected value.
+     * @param newValue the new value. Cannot be <code>null</code>.
+     * @return whether the value was replaced.
+     * 
+     * @throws IOError if an error occurs while reading or writing the data
+     * store.
+     */
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        Objects.requireNonNull(newValue);
+        V existing = update(key, old -> old != null && old.equals(oldValue) 
+                ? newValue : old, true).getOldValue();
+        return existing != null && existing.equals(oldValue);
+    }
+
+    /**
+     * Replaces the value of the given key if the key is in the data store.
+     * The check and the write are atomic.
+     * 
+     * @param key a key.
+     * @param value the new value. Cannot be <code>null</code>.
+     * @return the previous value, or <code>null</code> if there was none.
+     * 
+     * @throws IOError if an error occurs while reading or writing the data
+     * store.
+     */
+    @Override
+    public V replace(K key, V value) {
+        Objects.requireNonNull(value);
+        return update(key, old -> old != null ? value : null, true)
+                .getOldValue();
+    }
+
+    /**
+     * Computes a value for the given key if it is not in the data store. The
+     * function is called while the key is locked, so it must not access this
+     * data store, and it may be called more than once if another thread 
+     * puts the key at the same time.
+     * 
+     * @param key a key.
+     * @param mappingFunction the function.
+     * @return the existing or computed value, or <code>null</code> if the 
+     * function returned <code>null</code>.
+     * 
+     * @throws IOError if an error occurs while reading or writing the data
+     * store.
+     */
+    @Override
+    public V computeIfAbsent(K key, 
+            Function<? super K, ? extends V> mappingFunction) {
+        return update(key, old -> old != null ? old 
+                : mappingFunction.apply(key), true).getNewValue();
+    }
+
+    /**
+     * Computes a new value for the given key if it is in the data store. If
+     * the function returns <code>null</code>, the key is removed. The 
+     * function is called while the key is locked, so it must not access this
+     * data store.
+     * 
+     * @param key a key.
+     * @param remappingFunction the function.
+     * @return the new value, or <code>null</code> if there is none.
+     * 
+     * @throws IOError if an error occurs while reading or writing the data
+     * store.
+     */
+    @Override
+    public V computeIfPresent(K key, 
+            BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        return update(key, old -> old != null 
+                ? remappingFunction.apply(key, old) : null, false)
+                .getNewValue();
+    }
+
+    /**
+     * Computes a new value for the given key from its current value, or from
+     * <code>null</code> if it is not in the data store. If the function 
+     * returns <code>null</code>, the key is removed. The function is called
+     * while the key is locked, so it must not access this data store, and it
+     * may be called more than once if another thread puts the key at the 
+     * same time.
+     * 
+     * @param key a key.
+     * @param remappingFunction the function.
+     * @return the new value, or <code>null</code> if there is none.
+     * 
+     * @throws IOError if an error occurs while reading or writing the data
+     * store.
+     */
+    @Override
+    public V compute(K key, 
+            BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        return update(key, old -> remappingFunction.apply(key, old), false)
+                .getNewValue();
+    }
+
+    /**
+     * Puts the given value if the given key is not in the data store, and 
+     * otherwise combines the existing value with the given value. If the 
+     * function returns <code>null</code>, the key is removed. The function 
+     * is called while the key is locked, so it must not access this data
+     * store.
+     * 
+     * @param key a key.
+     * @param value a value. Cannot be <code>null</code>.
+     * @param remappingFunction the function.
+     * @return the new value, or <code>null</code> if there is none.
+     * 
+     * @throws IOError if an error occurs while reading or writing the data
+     * store.
+     */
+    @Override
+    public V merge(K key, V value, 
+            BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(value);
+        return update(key, old -> old != null 
+                ? remappingFunction.apply(old, value) : value, false)
+                .getNewValue();
     }
 
     @Override
@@ -207,6 +907,871 @@ public class BdbMap<K, V> implements DataStore<K, V> {
         }
     }
 
+    /**
+     * Returns the value corresponding to the given key bytes.
+     * 
+     * @param keyEntry the key's bytes.
+     * @return the value, or <code>null</code> if the key is not in the data
+     * store.
+     * 
+     * @throws IOError if an error occurs getting the value.
+     */
+    final V getEntry(DatabaseEntry keyEntry) {
+        DatabaseEntry dataEntry = new DatabaseEntry();
+        try {
+            if (this.db.get(currentTransaction(), keyEntry, dataEntry, 
+                    LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+                return this.valueBinding.entryToObject(dataEntry);
+            } else {
+                return null;
+            }
+        } catch (OperationFailureException | EnvironmentFailureException
+                | RuntimeExceptionWrapper ex) {
+            throw new IOError(ex);
+        }
+    }
+
+    /**
+     * Writes the given key and value bytes, and returns the value that they
+     * replaced.
+     * 
+     * @param keyEntry the key's bytes.
+     * @param dataEntry the value's bytes.
+     * @return the previous value, or <code>null</code> if there was none.
+     * 
+     * @throws IOError if an error occurs writing the value.
+     */
+    final V putEntry(DatabaseEntry keyEntry, DatabaseEntry dataEntry) {
+        return autoCommit(() -> {
+            DatabaseEntry oldDataEntry = new DatabaseEntry();
+            try (Cursor cursor 
+                    = this.db.openCursor(currentTransaction(), null)) {
+                V oldValue;
+                if (cursor.getSearchKey(keyEntry, oldDataEntry, LockMode.RMW)
+                        == OperationStatus.SUCCESS) {
+                    oldValue = this.valueBinding.entryToObject(oldDataEntry);
+                    cursor.putCurrent(dataEntry);
+                } else {
+                    oldValue = null;
+                    cursor.put(keyEntry, dataEntry);
+                }
+                return oldValue;
+            } catch (OperationFailureException | EnvironmentFailureException
+                    | RuntimeExceptionWrapper | UnsupportedOperationException
+                    | IllegalArgumentException ex) {
+                throw new IOError(ex);
+            }
+        });
+    }
+
+    /**
+     * Writes the given key and value bytes without reading the value that 
+     * they replace.
+     * 
+     * @param keyEntry the key's bytes.
+     * @param dataEntry the value's bytes.
+     * 
+     * @throws IOError if an error occurs writing the value.
+     */
+    final void setEntry(DatabaseEntry keyEntry, DatabaseEntry dataEntry) {
+        autoCommit(() -> {
+            try {
+                this.db.put(currentTransaction(), keyEntry, dataEntry);
+                return null;
+            } catch (OperationFailureException | EnvironmentFailureException
+                    | UnsupportedOperationException 
+                    | IllegalArgumentException ex) {
+                throw new IOError(ex);
+            }
+        });
+    }
+
+    /**
+     * Removes the given key bytes and returns the value that was removed.
+     * 
+     * @param keyEntry the key's bytes.
+     * @return the removed value, or <code>null</code> if there was none.
+     * 
+     * @throws IOError if an error occurs removing the value.
+     */
+    final V removeEntry(DatabaseEntry keyEntry) {
+        return autoCommit(() -> {
+            DatabaseEntry dataEntry = new DatabaseEntry();
+            try (Cursor cursor 
+                    = this.db.openCursor(currentTransaction(), null)) {
+                if (cursor.getSearchKey(keyEntry, dataEntry, LockMode.RMW)
+                        == OperationStatus.SUCCESS) {
+                    V oldValue = this.valueBinding.entryToObject(dataEntry);
+                    cursor.delete();
+                    return oldValue;
+                } else {
+                    return null;
+                }
+            } catch (OperationFailureException | EnvironmentFailureException
+                    | RuntimeExceptionWrapper 
+                    | UnsupportedOperationException ex) {
+                throw new IOError(ex);
+            }
+        });
+    }
+
+    /**
+     * Returns whether the given key bytes are in the data store.
+     * 
+     * @param keyEntry the key's bytes.
+     * @return <code>true</code> or <code>false</code>.
+     * 
+     * @throws IOError if an error occurs while checking the data store.
+     */
+    final boolean containsEntry(DatabaseEntry keyEntry) {
+        DatabaseEntry dataEntry = new DatabaseEntry();
+        dataEntry.setPartial(0, 0, true);
+        try {
+            return this.db.get(currentTransaction(), keyEntry, dataEntry,
+                    LockMode.DEFAULT) == OperationStatus.SUCCESS;
+        } catch (OperationFailureException | EnvironmentFailureException ex) {
+            throw new IOError(ex);
+        }
+    }
+
+    /**
+     * Atomically replaces the value of the given key with the result of the
+     * given function, under a read-modify-write lock on the key. The 
+     * function gets the current value, or <code>null</code> if there is 
+     * none, and returns the new value, or <code>null</code> to remove the 
+     * key. The function is called again if another thread inserts the key
+     * between the read and the write.
+     * 
+     * @param key a key.
+     * @param function the function.
+     * @param skipSame whether to skip the write if the function returns the
+     * current value object itself. Only functions that never modify the 
+     * current value may use it, so it is <code>false</code> for 
+     * user-supplied functions, which may modify the value in place.
+     * @return the old and new values.
+     * 
+     * @throws IOError if an error occurs while reading or writing the data
+     * store.
+     */
+    Update<V> update(Object key, UnaryOperator<V> function, 
+            boolean skipSame) {
+        DatabaseEntry keyEntry = toKeyEntry(key);
+        ReadOptions rmw = new ReadOptions().setLockMode(LockMode.RMW);
+        return autoCommit(() -> {
+            while (true) {
+                try (Cursor cursor 
+                        = this.db.openCursor(currentTransaction(), null)) {
+                    DatabaseEntry dataEntry = new DatabaseEntry();
+                    boolean found = cursor.get(keyEntry, dataEntry, 
+                            Get.SEARCH, rmw) != null;
+                    V oldValue = found 
+                            ? this.valueBinding.entryToObject(dataEntry) 
+                            : null;
+                    V newValue = function.apply(oldValue);
+                    if (newValue == null && found) {
+                        cursor.delete();
+                    } else if (newValue != null 
+                            && !(skipSame && newValue == oldValue)) {
+                        DatabaseEntry newDataEntry = new DatabaseEntry();
+                        this.valueBinding.objectToEntry(newValue, 
+                                newDataEntry);
+                        if (found) {
+                            cursor.put(null, newDataEntry, Put.CURRENT, null);
+                        } else if (cursor.put(keyEntry, newDataEntry,
+                                Put.NO_OVERWRITE, null) == null) {
+                            continue;
+                        }
+                    }
+                    return new Update<>(oldValue, newValue);
+                } catch (OperationFailureException 
+                        | EnvironmentFailureException
+                        | RuntimeExceptionWrapper 
+                        | UnsupportedOperationException
+                        | IllegalArgumentException ex) {
+                    throw new IOError(ex);
+                }
+            }
+        });
+    }
+
+    /**
+     * Deletes the keys from <code>fromKey</code>, inclusive, to 
+     * <code>toKey</code>, exclusive, with one cursor.
+     * 
+     * @param fromKey the first key to delete, or <code>null</code> to start
+     * with the first key.
+     * @param toKey the key after the last key to delete, or 
+     * <code>null</code> to delete through the last key.
+     * @param onDelete called with the value bytes of each deleted key, in 
+     * the same transaction, or <code>null</code> to not read the values.
+     * @return the number of keys that were deleted.
+     * 
+     * @throws IOError if an error occurred while deleting the keys.
+     */
+    final int deleteRange(K fromKey, K toKey, 
+            Consumer<DatabaseEntry> onDelete) {
+        DatabaseEntry fromEntry = fromKey != null ? toKeyEntry(fromKey) : null;
+        DatabaseEntry toEntry = toKey != null ? toKeyEntry(toKey) : null;
+        ReadOptions rmw = new ReadOptions().setLockMode(LockMode.RMW);
+        return autoCommit(() -> {
+            int count = 0;
+            DatabaseEntry keyEntry = fromEntry != null ? fromEntry 
+                    : new DatabaseEntry();
+            DatabaseEntry dataEntry = new DatabaseEntry();
+            if (onDelete == null) {
+                dataEntry.setPartial(0, 0, true);
+            }
+            try (Cursor cursor 
+                    = this.db.openCursor(currentTransaction(), null)) {
+                OperationResult result = cursor.get(keyEntry, dataEntry,
+                        fromEntry != null ? Get.SEARCH_GTE : Get.FIRST, rmw);
+                while (result != null && (toEntry == null 
+                        || compareKeys(keyEntry, toEntry) < 0)) {
+                    cursor.delete();
+                    count++;
+                    if (onDelete != null) {
+                        onDelete.accept(dataEntry);
+                    }
+                    result = cursor.get(keyEntry, dataEntry, Get.NEXT, rmw);
+                }
+            } catch (OperationFailureException | EnvironmentFailureException
+                    | UnsupportedOperationException ex) {
+                throw new IOError(ex);
+            }
+            return count;
+        });
+    }
+
+    /**
+     * Converts the given keys to bytes and sorts them in the database's key
+     * order.
+     * 
+     * @param keys the keys.
+     * @return pairs of key bytes and keys, sorted by the key bytes.
+     * 
+     * @throws IOError if a key cannot be converted.
+     */
+    private List<Map.Entry<byte[], K>> sortKeys(Collection<? extends K> keys) {
+        List<Map.Entry<byte[], K>> sortedKeys = new ArrayList<>(keys.size());
+        for (K key : keys) {
+            DatabaseEntry keyEntry = toKeyEntry(key);
+            sortedKeys.add(new AbstractMap.SimpleImmutableEntry<>(
+                    Arrays.copyOfRange(keyEntry.getData(), 
+                            keyEntry.getOffset(),
+                            keyEntry.getOffset() + keyEntry.getSize()), 
+                    key));
+        }
+        sortedKeys.sort((me1, me2) -> compareKeys(me1.getKey(), 
+                me2.getKey()));
+        return sortedKeys;
+    }
+
+    /**
+     * Compares keys the way Berkeley DB orders them by default: byte by 
+     * byte as unsigned values, with a key that is a prefix of another 
+     * ordered first.
+     * 
+     * @param key1 a key.
+     * @param key2 another key.
+     * @return a negative number, zero or a positive number if the first key
+     * is ordered before, the same as or after the second.
+     */
+    static int compareKeys(DatabaseEntry key1, DatabaseEntry key2) {
+        return compareKeys(key1.getData(), key1.getOffset(), key1.getSize(),
+                key2.getData(), key2.getOffset(), key2.getSize());
+    }
+
+    static int compareKeys(byte[] key1, byte[] key2) {
+        return compareKeys(key1, 0, key1.length, key2, 0, key2.length);
+    }
+
+    private static int compareKeys(byte[] data1, int off1, int len1, 
+            byte[] data2, int off2, int len2) {
+        int n = Math.min(len1, len2);
+        for (int i = 0; i < n; i++) {
+            int cmp = (data1[off1 + i] & 0xff) - (data2[off2 + i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return len1 - len2;
+    }
+
+    /**
+     * Converts the given key to bytes.
+     * 
+     * @param key a key.
+     * @return the key's bytes.
+     * 
+     * @throws IOError if the key cannot be converted.
+     */
+    @SuppressWarnings("unchecked")
+    final DatabaseEntry toKeyEntry(Object key) {
+        DatabaseEntry keyEntry = new DatabaseEntry();
+        try {
+            this.keyBinding.objectToEntry((K) key, keyEntry);
+        } catch (RuntimeExceptionWrapper | IllegalArgumentException 
+                | ClassCastException ex) {
+            throw new IOError(ex);
+        }
+        return keyEntry;
+    }
+
+    /**
+     * Removes the given key bytes without reading the value that is removed.
+     * 
+     * @param keyEntry the key's bytes.
+     * @return <code>true</code> if the key was in the data store, 
+     * <code>false</code> if not.
+     * 
+     * @throws IOError if an error occurs removing the value.
+     */
+    final boolean deleteEntry(DatabaseEntry keyEntry) {
+        return autoCommit(() -> {
+            try {
+                return this.db.delete(currentTransaction(), keyEntry)
+                        == OperationStatus.SUCCESS;
+            } catch (OperationFailureException | EnvironmentFailureException
+                    | UnsupportedOperationException ex) {
+                throw new IOError(ex);
+            }
+        });
+    }
+
+    /**
+     * Applies a put from a write batch. This implementation writes the key
+     * and value without reading the value that they replace.
+     * 
+     * @param key a key.
+     * @param keyEntry the key's bytes.
+     * @param dataEntry the value's bytes, from 
+     * {@link #getStoredValueBinding() }.
+     * 
+     * @throws IOError if an error occurs writing the value.
+     */
+    void batchPut(K key, DatabaseEntry keyEntry, DatabaseEntry dataEntry) {
+        setEntry(keyEntry, dataEntry);
+    }
+
+    /**
+     * Applies a remove from a write batch. This implementation removes the 
+     * key without reading the value that is removed.
+     * 
+     * @param key a key.
+     * @param keyEntry the key's bytes.
+     * 
+     * @throws IOError if an error occurs removing the value.
+     */
+    void batchRemove(K key, DatabaseEntry keyEntry) {
+        deleteEntry(keyEntry);
+    }
+
+    /**
+     * Returns the binding that write batches and {@link BdbBulkLoader} use 
+     * to convert values to the bytes that they pass to 
+     * {@link #batchPut(java.lang.Object, com.sleepycat.je.DatabaseEntry, com.sleepycat.je.DatabaseEntry) }
+     * and
+     * {@link #loadEntry(com.sleepycat.je.Cursor, com.sleepycat.je.DatabaseEntry, com.sleepycat.je.DatabaseEntry) }.
+     * This implementation returns the data store's value binding.
+     * 
+     * @return a value binding.
+     */
+    EntryBinding<V> getStoredValueBinding() {
+        return this.valueBinding;
+    }
+
+    /**
+     * Writes a key and value from a bulk load with the given cursor. This
+     * implementation writes the bytes as is.
+     * 
+     * @param cursor a cursor on the data store's database in the current
+     * transaction.
+     * @param keyEntry the key's bytes.
+     * @param dataEntry the value's bytes, from 
+     * {@link #getStoredValueBinding() }.
+     */
+    void loadEntry(Cursor cursor, DatabaseEntry keyEntry, 
+            DatabaseEntry dataEntry) {
+        cursor.put(keyEntry, dataEntry, Put.OVERWRITE, null);
+    }
+
+    /**
+     * Writes the given keys and values, which must be sorted in the 
+     * database's key order, with one cursor. If the data store is 
+     * transactional, they are written in transactions of at most 
+     * {@link BdbStoreConfig#getBatchCommitSize() } entries each, unless the
+     * current thread has a transaction already.
+     * 
+     * @param sortedEntries the key and value bytes, sorted by key.
+     * @return the number of entries written.
+     * 
+     * @throws IOError if an error occurs while writing.
+     */
+    final long loadSorted(Iterator<Map.Entry<byte[], byte[]>> sortedEntries) {
+        int chunkSize = this.transactional && currentTransaction() == null
+                ? this.batchCommitSize : Integer.MAX_VALUE;
+        long count = 0;
+        while (sortedEntries.hasNext()) {
+            count += autoCommit(() -> {
+                int n = 0;
+                try (Cursor cursor 
+                        = this.db.openCursor(currentTransaction(), null)) {
+                    while (n < chunkSize && sortedEntries.hasNext()) {
+                        Map.Entry<byte[], byte[]> me = sortedEntries.next();
+                        loadEntry(cursor, new DatabaseEntry(me.getKey()),
+                                new DatabaseEntry(me.getValue()));
+                        n++;
+                    }
+                } catch (OperationFailureException 
+                        | EnvironmentFailureException
+                        | UnsupportedOperationException ex) {
+                    throw new IOError(ex);
+                }
+                return n;
+            });
+        }
+        return count;
+    }
+
+    /**
+     * Runs the given operation in a transaction with this data store's 
+     * durability, if the data store is transactional and the current thread
+     * does not have a transaction already. Otherwise, it runs the operation
+     * as is. The operation must use {@link #currentTransaction() } for its
+     * reads and writes.
+     * 
+     * @param <T> the operation's result type.
+     * @param operation the operation.
+     * @return the operation's result.
+     * 
+     * @throws IOError if an error occurs while running the operation or 
+     * committing its transaction.
+     */
+    final <T> T autoCommit(Supplier<T> operation) {
+        CurrentTransaction currentTxn = this.transactional
+                ? CurrentTransaction.getInstance(this.envInfo.getEnvironment())
+                : null;
+        if (currentTxn == null || currentTxn.getTransaction() != null) {
+            return operation.get();
+        }
+        boolean committed = false;
+        try {
+            currentTxn.beginTransaction(this.txnConfig);
+            T result = operation.get();
+            currentTxn.commitTransaction();
+            committed = true;
+            return result;
+        } catch (DatabaseException | IllegalStateException ex) {
+            throw new IOError(ex);
+        } finally {
+            if (!committed && currentTxn.getTransaction() != null) {
+                abort(currentTxn);
+            }
+        }
+    }
+
+    /**
+     * Applies the given function to each of the given items, in parallel 
+     * on the data store's encoding threads if it has more than one. 
+     * Otherwise, the function is applied on the calling thread before this
+     * method returns.
+     * 
+     * @param <T> the item type.
+     * @param <R> the result type.
+     * @param items the items.
+     * @param function the function, typically one that converts objects to
+     * bytes.
+     * @return the pending results.
+     */
+    final <T, R> Encoding<R> encode(List<T> items, 
+            Function<? super T, ? extends R> function) {
+        List<Future<List<R>>> slices = new ArrayList<>();
+        int n = this.encoder != null 
+                ? Math.min(this.encodingThreads, items.size()) : 1;
+        if (n <= 1) {
+            FutureTask<List<R>> task 
+                    = new FutureTask<>(() -> encodeSlice(items, function));
+            task.run();
+            slices.add(task);
+        } else {
+            int sliceSize = (items.size() + n - 1) / n;
+            for (int from = 0; from < items.size(); from += sliceSize) {
+                List<T> slice = items.subList(from, 
+                        Math.min(items.size(), from + sliceSize));
+                slices.add(this.encoder.submit(
+                        () -> encodeSlice(slice, function)));
+            }
+        }
+        return new Encoding<>(slices);
+    }
+
+    private static <T, R> List<R> encodeSlice(List<T> items,
+            Function<? super T, ? extends R> function) {
+        List<R> result = new ArrayList<>(items.size());
+        for (T item : items) {
+            result.add(function.apply(item));
+        }
+        return result;
+    }
+
+    private EncodedOperation<K> encodeOperation(
+            WriteBatch.Operation<K, V> operation) {
+        DatabaseEntry keyEntry = new DatabaseEntry();
+        DatabaseEntry dataEntry = null;
+        try {
+            this.keyBinding.objectToEntry(operation.getKey(), keyEntry);
+            if (!operation.isRemove()) {
+                dataEntry = new DatabaseEntry();
+                getStoredValueBinding().objectToEntry(operation.getValue(),
+                        dataEntry);
+            }
+        } catch (RuntimeExceptionWrapper | IllegalArgumentException ex) {
+            throw new IOError(ex);
+        }
+        return new EncodedOperation<>(operation.getKey(), keyEntry, 
+                dataEntry);
+    }
+
+    private void apply(List<EncodedOperation<K>> operations) {
+        for (EncodedOperation<K> operation : operations) {
+            if (operation.dataEntry == null) {
+                batchRemove(operation.key, operation.keyEntry);
+            } else {
+                batchPut(operation.key, operation.keyEntry, 
+                        operation.dataEntry);
+            }
+        }
+    }
+
+    private static void abort(CurrentTransaction currentTxn) {
+        try {
+            currentTxn.abortTransaction();
+        } catch (DatabaseException | IllegalStateException ex) {
+            LOGGER.log(Level.SEVERE, "Error aborting transaction", ex);
+        }
+    }
+
+    /**
+     * Writes the given deferred-write database's changes to disk.
+     * 
+     * @param database a deferred-write database.
+     * 
+     * @throws IOError if an error occurs while writing to disk.
+     */
+    static void syncDatabase(Database database) {
+        try {
+            database.sync();
+        } catch (OperationFailureException | EnvironmentFailureException
+                | IllegalStateException ex) {
+            throw new IOError(ex);
+        }
+    }
+
+    /**
+     * Returns whether this data store's database is deferred-write.
+     * 
+     * @return <code>true</code> or <code>false</code>.
+     */
+    final boolean isDeferredWrite() {
+        return this.deferredWrite;
+    }
+
+    /**
+     * Returns the database handle backing this data store.
+     * 
+     * @return the database handle.
+     */
+    final Database getDatabase() {
+        return this.db;
+    }
+
+    /**
+     * Returns the binding used to convert keys to and from bytes.
+     * 
+     * @return the key binding.
+     */
+    final EntryBinding<K> getKeyBinding() {
+        return this.keyBinding;
+    }
+
+    /**
+     * Returns the binding used to convert values to and from bytes.
+     * 
+     * @return the value binding.
+     */
+    final EntryBinding<V> getValueBinding() {
+        return this.valueBinding;
+    }
+
+    /**
+     * Returns the transaction associated with the current thread, if any, so
+     * that operations that bypass the stored map participate in the same
+     * transactions as those that go through it.
+     * 
+     * @return a transaction, or <code>null</code> if there is none or the
+     * database is not transactional.
+     */
+    final Transaction currentTransaction() {
+        return this.transactional 
+                ? currentTransaction(this.envInfo.getEnvironment()) : null;
+    }
+
+    /**
+     * Returns the transaction associated with the current thread in the
+     * given environment, if any.
+     * 
+     * @param env the environment.
+     * @return a transaction, or <code>null</code> if there is none or the
+     * environment is not transactional.
+     */
+    static Transaction currentTransaction(Environment env) {
+        CurrentTransaction currentTxn = CurrentTransaction.getInstance(env);
+        return currentTxn != null ? currentTxn.getTransaction() : null;
+    }
+
+    /**
+     * Returns the database environment configuration.
+     * 
+     * @return the environment configuration.
+     */
+    final BdbEnvironmentInfo getEnvironmentInfo() {
+        return this.envInfo;
+    }
+
+    /**
+     * The keys of the data store, read without the records' data.
+     */
+    private final class KeySet extends AbstractSet<K> {
+
+        @Override
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+
+        @Override
+        public int size() {
+            return BdbMap.this.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return BdbMap.this.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            checkWriteAllowed();
+            return deleteEntry(toKeyEntry(o));
+        }
+
+        @Override
+        public void clear() {
+            checkWriteAllowed();
+            BdbMap.this.clear();
+        }
+    }
+
+    /**
+     * Iterates over the keys of the data store in blocks of 
+     * {@link #KEY_BLOCK_SIZE}. Each block is read with a key-only cursor 
+     * that is closed before the block's keys are returned, and the next 
+     * block starts after the last key of the previous one.
+     */
+    private final class KeyIterator implements Iterator<K> {
+
+        private final List<DatabaseEntry> block = new ArrayList<>();
+        private int next;
+        private boolean exhausted;
+        private DatabaseEntry current;
+
+        @Override
+        public boolean hasNext() {
+            if (this.next < this.block.size()) {
+                return true;
+            }
+            if (!this.exhausted) {
+                readBlock();
+            }
+            return this.next < this.block.size();
+        }
+
+        @Override
+        public K next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            this.current = this.block.get(this.next++);
+            try {
+                return keyBinding.entryToObject(this.current);
+            } catch (RuntimeExceptionWrapper ex) {
+                throw new IOError(ex);
+            }
+        }
+
+        @Override
+        public void remove() {
+            if (this.current == null) {
+                throw new IllegalStateException();
+            }
+            checkWriteAllowed();
+            deleteEntry(this.current);
+            this.current = null;
+        }
+
+        private void readBlock() {
+            DatabaseEntry lastKey = this.block.isEmpty() 
+                    ? null : this.block.get(this.block.size() - 1);
+            this.block.clear();
+            this.next = 0;
+            DatabaseEntry dataEntry = new DatabaseEntry();
+            dataEntry.setPartial(0, 0, true);
+            try (Cursor cursor = db.openCursor(currentTransaction(),
+                    CursorConfig.READ_COMMITTED)) {
+                DatabaseEntry keyEntry;
+                OperationResult result;
+                if (lastKey == null) {
+                    keyEntry = new DatabaseEntry();
+                    result = cursor.get(keyEntry, dataEntry, Get.FIRST, null);
+                } else {
+                    keyEntry = new DatabaseEntry(lastKey.getData(),
+                            lastKey.getOffset(), lastKey.getSize());
+                    result = cursor.get(keyEntry, dataEntry, Get.SEARCH_GTE,
+                            null);
+                    if (result != null 
+                            && compareKeys(keyEntry, lastKey) == 0) {
+                        keyEntry = new DatabaseEntry();
+                        result = cursor.get(keyEntry, dataEntry, Get.NEXT, 
+                                null);
+                    }
+                }
+                while (result != null) {
+                    this.block.add(keyEntry);
+                    if (this.block.size() == KEY_BLOCK_SIZE) {
+                        return;
+                    }
+                    keyEntry = new DatabaseEntry();
+                    result = cursor.get(keyEntry, dataEntry, Get.NEXT, null);
+                }
+                this.exhausted = true;
+            } catch (OperationFailureException | EnvironmentFailureException
+                    | IllegalStateException ex) {
+                throw new IOError(ex);
+            }
+        }
+    }
+
+    private void checkWriteAllowed() {
+        if (!this.writeAllowed) {
+            throw new UnsupportedOperationException(
+                    "this data store's views are read-only");
+        }
+    }
+
+    /**
+     * The pending results of 
+     * {@link #encode(java.util.List, java.util.function.Function) }.
+     * 
+     * @param <R> the result type.
+     */
+    static final class Encoding<R> {
+
+        private final List<Future<List<R>>> slices;
+
+        Encoding(List<Future<List<R>>> slices) {
+            this.slices = slices;
+        }
+
+        /**
+         * Waits for the results.
+         * 
+         * @return the results, in the order of the items.
+         * 
+         * @throws IOError if the function threw an {@link IOError} or a 
+         * checked exception, or if the thread was interrupted while 
+         * waiting.
+         */
+        List<R> get() {
+            List<R> result = new ArrayList<>();
+            try {
+                for (Future<List<R>> slice : this.slices) {
+                    result.addAll(slice.get());
+                }
+                return result;
+            } catch (InterruptedException ex) {
+                cancel();
+                Thread.currentThread().interrupt();
+                throw new IOError(ex);
+            } catch (ExecutionException ex) {
+                cancel();
+                Throwable cause = ex.getCause();
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else {
+                    throw new IOError(cause);
+                }
+            }
+        }
+
+        /**
+         * Cancels the work that has not started yet.
+         */
+        void cancel() {
+            for (Future<List<R>> slice : this.slices) {
+                slice.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * A write batch operation with its key and value converted to bytes.
+     */
+    private static final class EncodedOperation<K> {
+
+        private final K key;
+        private final DatabaseEntry keyEntry;
+        private final DatabaseEntry dataEntry;
+
+        EncodedOperation(K key, DatabaseEntry keyEntry, 
+                DatabaseEntry dataEntry) {
+            this.key = key;
+            this.keyEntry = keyEntry;
+            this.dataEntry = dataEntry;
+        }
+    }
+
+    /**
+     * The values of a key before and after 
+     * {@link #update(java.lang.Object, java.util.function.UnaryOperator,
+     * boolean) }.
+     * 
+     * @param <V> the value type.
+     */
+    static final class Update<V> {
+
+        private final V oldValue;
+        private final V newValue;
+
+        Update(V oldValue, V newValue) {
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+        }
+
+        V getOldValue() {
+            return oldValue;
+        }
+
+        V getNewValue() {
+            return newValue;
+        }
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == null) {
@@ -20,6 +20,8 @@ package org.eurekaclinical.datastore.bdb;
  * #L%
  */
 
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.bind.serial.SerialBinding;
 import com.sleepycat.bind.serial.StoredClassCatalog;
 import com.sleepycat.je.*;
 import java.lang.management.ManagementFactory;
@@ -32,7 +34,9 @@ import java.util.logging.Logger;
  * Implementation of a Berkeley DB database factory. It automatically sets the
  * cache size of created databases, makes created databases read-write, and
  * sets databases to be persistent. Its databases will not be deleted when the
- * Java virtual machine exits.
+ * Java virtual machine exits. Optionally, values of data stores that are 
+ * opened without a value binding may be stored with a {@link CompactBinding}
+ * instead of Java serialization.
  * 
  * @author Andrew Post
  */
@@ -42,6 +46,8 @@ public class BdbPersistentStoreFactory<E, V> extends BdbStoreFactory<E, V> {
     
     private static final String CLASS_CATALOG = "java_class_catalog";
     
+    private final CompactClassRegistry compactClassRegistry;
+    
     /**
      * Creates a persistent Berkeley DB factory that creates databases at the
      * provided path.
@@ -49,7 +55,26 @@ public class BdbPersistentStoreFactory<E, V> extends BdbStoreFactory<E, V> {
      * <code>null</code>.
      */
     public BdbPersistentStoreFactory(String pathname) {
+        this(pathname, null);
+    }
+    
+    /**
+     * Creates a persistent Berkeley DB factory that creates databases at the
+     * provided path, and that stores values with a {@link CompactBinding} by
+     * default. Values that the compact binding does not handle itself are 
+     * stored using Java serialization.
+     * 
+     * @param pathname the path at which to create databases. Cannot be
+     * <code>null</code>.
+     * @param compactClassRegistry the application classes that the compact
+     * binding should store by numeric identifier, or <code>null</code> to 
+     * use Java serialization for all values by default.
+     */
+    public BdbPersistentStoreFactory(String pathname,
+            CompactClassRegistry compactClassRegistry) {
         super(pathname, false);
+        this.compactClassRegistry = compactClassRegistry != null
+                ? compactClassRegistry.copy() : null;
     }
     
     /**
@@ -78,6 +103,27 @@ public class BdbPersistentStoreFactory<E, V> extends BdbStoreFactory<E, V> {
         return new StoredClassCatalog(catalogDb);
     }
 
+    /**
+     * Creates a binding for values of data stores that are opened without a
+     * value binding. If this factory was created with a compact class 
+     * registry, it returns a {@link CompactBinding} that falls back to Java
+     * serialization. Otherwise, it returns a Java serialization binding.
+     * 
+     * @param classCatalog the environment's class catalog.
+     * 
+     * @return a new value binding.
+     */
+    @Override
+    protected EntryBinding<V> createDefaultValueBinding(
+            StoredClassCatalog classCatalog) {
+        if (this.compactClassRegistry != null) {
+            return new CompactBinding<>(this.compactClassRegistry,
+                    new SerialBinding<>(classCatalog, null));
+        } else {
+            return super.createDefaultValueBinding(classCatalog);
+        }
+    }
+
     /**
      * Creates an environment config that allows object creation and supports
      * transactions. In addition, it automatically calculates a cache size
@@ -0,0 +1,150 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.collections.StoredSortedMap;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.EnvironmentFailureException;
+import com.sleepycat.je.OperationFailureException;
+import com.sleepycat.util.RuntimeExceptionWrapper;
+import java.io.IOError;
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import java.util.function.Supplier;
+import org.eurekaclinical.datastore.SortedDataStore;
+
+/**
+ * A Berkeley DB data store with range views. Keys are ordered by their 
+ * bytes, so the key binding must be order-preserving, such as the tuple 
+ * bindings in {@link BdbBindings} and {@link CompositeKeyBinding}. A range
+ * view reads only the records in its range, with a cursor that starts at 
+ * the view's low key.
+ *
+ * This implementation is thread-safe.
+ *
+ * @author Andrew Post
+ * @param <K> the key type to store.
+ * @param <V> the value type to store.
+ */
+public class BdbSortedMap<K, V> extends BdbMap<K, V> 
+        implements SortedDataStore<K, V> {
+
+    private final StoredSortedMap<K, V> sortedMap;
+
+    /**
+     * Creates a new sorted Berkeley DB data store.
+     * 
+     * @param envInfo the database environment configuration.
+     * @param database the database.
+     * @param keyBinding the binding for keys. Cannot be <code>null</code>,
+     * and must be order-preserving.
+     * @param valueBinding the binding for values. Cannot be 
+     * <code>null</code>.
+     * @param config the data store's options, or <code>null</code> for the
+     * defaults.
+     */
+    BdbSortedMap(BdbEnvironmentInfo envInfo, Database database,
+            EntryBinding<K> keyBinding, EntryBinding<V> valueBinding,
+            BdbStoreConfig<?, ?> config) {
+        super(envInfo, database, keyBinding, valueBinding, config);
+        this.sortedMap = new StoredSortedMap<>(database, keyBinding, 
+                valueBinding, true);
+    }
+
+    /**
+     * Returns <code>null</code>, because the keys are ordered by their 
+     * bytes. For the tuple bindings in {@link BdbBindings}, that is the 
+     * keys' natural order.
+     * 
+     * @return <code>null</code>.
+     */
+    @Override
+    public Comparator<? super K> comparator() {
+        return null;
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return view(() -> this.sortedMap.subMap(fromKey, toKey));
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey,
+            boolean toInclusive) {
+        return view(() -> this.sortedMap.subMap(fromKey, fromInclusive, 
+                toKey, toInclusive));
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return view(() -> this.sortedMap.headMap(toKey));
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey, boolean inclusive) {
+        return view(() -> this.sortedMap.headMap(toKey, inclusive));
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return view(() -> this.sortedMap.tailMap(fromKey));
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        return view(() -> this.sortedMap.tailMap(fromKey, inclusive));
+    }
+
+    @Override
+    public K firstKey() {
+        return key(this.sortedMap::firstKey);
+    }
+
+    @Override
+    public K lastKey() {
+        return key(this.sortedMap::lastKey);
+    }
+
+    private static <K, V> SortedMap<K, V> view(
+            Supplier<SortedMap<K, V>> view) {
+        try {
+            return view.get();
+        } catch (RuntimeExceptionWrapper ex) {
+            throw new IOError(ex);
+        }
+    }
+
+    private static <K> K key(Supplier<K> key) {
+        K result;
+        try {
+            result = key.get();
+        } catch (OperationFailureException | EnvironmentFailureException
+                | RuntimeExceptionWrapper ex) {
+            throw new IOError(ex);
+        }
+        if (result == null) {
+            throw new NoSuchElementException("data store is empty");
+        }
+        return result;
+    }
+}
@@ -0,0 +1,367 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.je.Durability;
+
+/**
+ * Per-data store options for
+ * {@link BdbStoreFactory#getInstance(java.lang.String, org.eurekaclinical.datastore.bdb.BdbStoreConfig) }.
+ * Like bindings, these options are not persisted, so a data store must be
+ * opened with the same options every time. Setters return this object so
+ * that calls may be chained.
+ *
+ * @author Andrew Post
+ * @param <K> the key type to store.
+ * @param <V> the value type to store.
+ */
+public class BdbStoreConfig<K, V> {
+
+    private EntryBinding<K> keyBinding;
+    private EntryBinding<V> valueBinding;
+    private CompressionAlgorithm compressionAlgorithm;
+    private int compressionThreshold;
+    private byte[] compressionDictionary;
+    private boolean keyPrefixing;
+    private boolean deduplicating;
+    private boolean transactional;
+    private int batchCommitSize;
+    private boolean deferredWrite;
+    private Durability durability;
+    private int encodingThreads;
+
+    /**
+     * The default number of operations per transaction when a transactional
+     * data store applies a write batch.
+     */
+    public static final int DEFAULT_BATCH_COMMIT_SIZE = 1000;
+
+    /**
+     * Creates a config with the default options: Java serialization for 
+     * keys, the factory's default value binding, and no compression.
+     */
+    public BdbStoreConfig() {
+        this.compressionThreshold = CompressingBinding.DEFAULT_THRESHOLD;
+        this.batchCommitSize = DEFAULT_BATCH_COMMIT_SIZE;
+        this.encodingThreads = 1;
+    }
+
+    /**
+     * Returns the key binding.
+     *
+     * @return the key binding, or <code>null</code> to use Java 
+     * serialization.
+     */
+    public EntryBinding<K> getKeyBinding() {
+        return keyBinding;
+    }
+
+    /**
+     * Sets the key binding.
+     *
+     * @param keyBinding the key binding, or <code>null</code> to use Java 
+     * serialization.
+     * @return this config.
+     */
+    public BdbStoreConfig<K, V> setKeyBinding(EntryBinding<K> keyBinding) {
+        this.keyBinding = keyBinding;
+        return this;
+    }
+
+    /**
+     * Returns the value binding.
+     *
+     * @return the value binding, or <code>null</code> to use the factory's
+     * default value binding.
+     */
+    public EntryBinding<V> getValueBinding() {
+        return valueBinding;
+    }
+
+    /**
+     * Sets the value binding.
+     *
+     * @param valueBinding the value binding, or <code>null</code> to use the
+     * factory's default value binding.
+     * @return this config.
+     */
+    public BdbStoreConfig<K, V> setValueBinding(
+            EntryBinding<V> valueBinding) {
+        this.valueBinding = valueBinding;
+        return this;
+    }
+
+    /**
+     * Returns the algorithm used to compress values.
+     *
+     * @return the algorithm, or <code>null</code> if values are not 
+     * compressed.
+     */
+    public CompressionAlgorithm getCompressionAlgorithm() {
+        return compressionAlgorithm;
+    }
+
+    /**
+     * Sets the algorithm used to compress values. If set, the value binding
+     * is wrapped in a {@link CompressingBinding}. Keys are never compressed.
+     *
+     * @param compressionAlgorithm the algorithm, or <code>null</code> to 
+     * store values uncompressed.
+     * @return this config.
+     */
+    public BdbStoreConfig<K, V> setCompressionAlgorithm(
+            CompressionAlgorithm compressionAlgorithm) {
+        this.compressionAlgorithm = compressionAlgorithm;
+        return this;
+    }
+
+    /**
+     * Returns the size in bytes below which values are stored uncompressed.
+     *
+     * @return the threshold.
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Sets the size in bytes below which values are stored uncompressed. The
+     * default is {@link CompressingBinding#DEFAULT_THRESHOLD}.
+     *
+     * @param compressionThreshold the threshold.
+     * @return this config.
+     */
+    public BdbStoreConfig<K, V> setCompressionThreshold(
+            int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+        return this;
+    }
+
+    /**
+     * Returns the compression dictionary.
+     *
+     * @return the dictionary, or <code>null</code> if there is none.
+     */
+    public byte[] getCompressionDictionary() {
+        return compressionDictionary;
+    }
+
+    /**
+     * Sets a compression dictionary, which may be created with
+     * {@link CompressingBinding#trainDictionary(java.lang.Iterable, int) }.
+     *
+     * @param compressionDictionary the dictionary, or <code>null</code> for
+     * none.
+     * @return this config.
+     */
+    public BdbStoreConfig<K, V> setCompressionDictionary(
+            byte[] compressionDictionary) {
+        this.compressionDictionary = compressionDictionary;
+        return this;
+    }
+
+    /**
+     * Returns whether Berkeley DB key prefixing is requested. Key prefixing
+     * is also used, regardless of this option, for data stores whose key 
+     * binding is a {@link CompositeKeyBinding}.
+     *
+     * @return <code>true</code> or <code>false</code>.
+     */
+    public boolean isKeyPrefixing() {
+        return keyPrefixing;
+    }
+
+    /**
+     * Sets whether to use Berkeley DB key prefixing, which stores the leading
+     * bytes that neighboring keys share only once per B-tree node. It saves 
+     * space and cache when many keys share a prefix. The default is 
+     * <code>false</code>.
+     *
+     * @param keyPrefixing <code>true</code> or <code>false</code>.
+     * @return this config.
+     */
+    public BdbStoreConfig<K, V> setKeyPrefixing(boolean keyPrefixing) {
+        this.keyPrefixing = keyPrefixing;
+        return this;
+    }
+
+    /**
+     * Returns whether each distinct value is stored only once.
+     *
+     * @return <code>true</code> or <code>false</code>.
+     */
+    public boolean isDeduplicating() {
+        return deduplicating;
+    }
+
+    /**
+     * Sets whether to store each distinct value only once, in which case 
+     * the data store is a {@link BdbDedupMap}. It is worthwhile when many 
+     * keys map to the same large values. The default is <code>false</code>.
+     *
+     * @param deduplicating <code>true</code> or <code>false</code>.
+     * @return this config.
+     */
+    public BdbStoreConfig<K, V> setDeduplicating(boolean deduplicating) {
+        this.deduplicating = deduplicating;
+        return this;
+    }
+
+    /**
+     * Returns whether the data store's database is transactional.
+     *
+     * @return <code>true</code> or <code>false</code>.
+     */
+    public boolean isTransactional() {
+        return transactional;
+    }
+
+    /**
+     * Sets whether the data store's database is transactional, which 
+     * requires a transactional environment. Each write to a transactional 
+     * data store is committed separately unless it is part of a write batch
+     * or of a transaction that the caller started. The default is 
+     * <code>false</code>.
+     *
+     * @param transactional <code>true</code> or <code>false</code>.
+     * @return this config.
+     */
+    public BdbStoreConfig<K, V> setTransactional(boolean transactional) {
+        this.transactional = transactional;
+        return this;
+    }
+
+    /**
+     * Returns the number of operations per transaction when a transactional
+     * data store applies a write batch.
+     *
+     * @return the number of operations.
+     */
+    public int getBatchCommitSize() {
+        return batchCommitSize;
+    }
+
+    /**
+     * Sets the number of operations per transaction when a transactional 
+     * data store applies a write batch. Larger transactions commit less 
+     * often but hold more locks. The default is 
+     * {@link #DEFAULT_BATCH_COMMIT_SIZE}.
+     *
+     * @param batchCommitSize the number of operations. Must be positive.
+     * @return this config.
+     */
+    public BdbStoreConfig<K, V> setBatchCommitSize(int batchCommitSize) {
+        if (batchCommitSize < 1) {
+            throw new IllegalArgumentException(
+                    "batchCommitSize must be positive");
+        }
+        this.batchCommitSize = batchCommitSize;
+        return this;
+    }
+
+    /**
+     * Returns whether the data store's database is deferred-write.
+     *
+     * @return <code>true</code> or <code>false</code>.
+     */
+    public boolean isDeferredWrite() {
+        return deferredWrite;
+    }
+
+    /**
+     * Sets whether the data store's database is deferred-write. Writes to a
+     * deferred-write database stay in the cache until 
+     * {@link BdbMap#sync() } or {@link BdbMap#close() } is called, or until
+     * the cache fills up, so only the last version of a record that is 
+     * written repeatedly is logged. Writes since the last sync are lost if 
+     * the application crashes, so this is suited to data stores that can be
+     * rebuilt. A data store cannot be both deferred-write and 
+     * transactional. The default is <code>false</code>.
+     *
+     * @param deferredWrite <code>true</code> or <code>false</code>.
+     * @return this config.
+     */
+    public BdbStoreConfig<K, V> setDeferredWrite(boolean deferredWrite) {
+        this.deferredWrite = deferredWrite;
+        return this;
+    }
+
+    /**
+     * Returns the durability of the data store's commits.
+     *
+     * @return the durability, or <code>null</code> to use the environment's
+     * durability.
+     */
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Sets the durability of the data store's commits, such as
+     * {@link Durability#COMMIT_SYNC}, {@link Durability#COMMIT_WRITE_NO_SYNC}
+     * or {@link Durability#COMMIT_NO_SYNC}. Only transactional data stores
+     * have commits. The relaxed policies may lose the most recent commits if
+     * the application or the operating system crashes, up to the log flush
+     * interval of the factory (see 
+     * {@link BdbStoreFactory#setLogFlushInterval(long, java.util.concurrent.TimeUnit) }).
+     * The default is <code>null</code>.
+     *
+     * @param durability the durability, or <code>null</code> to use the 
+     * environment's durability.
+     * @return this config.
+     */
+    public BdbStoreConfig<K, V> setDurability(Durability durability) {
+        this.durability = durability;
+        return this;
+    }
+
+    /**
+     * Returns the number of threads that convert keys and values to bytes
+     * when the data store applies a write batch.
+     *
+     * @return the number of threads.
+     */
+    public int getEncodingThreads() {
+        return encodingThreads;
+    }
+
+    /**
+     * Sets the number of threads that convert keys and values to bytes when
+     * the data store applies a write batch, including 
+     * {@link BdbMap#putAll(java.util.Map) }, or is loaded by a 
+     * {@link BdbBulkLoader}. With more than one, the next chunk of a batch 
+     * is converted in parallel while the current chunk is written, which
+     * helps when the bindings are expensive. The bindings must be 
+     * thread-safe. The default is 1, which converts on the calling thread.
+     *
+     * @param encodingThreads the number of threads. Must be positive.
+     * @return this config.
+     */
+    public BdbStoreConfig<K, V> setEncodingThreads(int encodingThreads) {
+        if (encodingThreads < 1) {
+            throw new IllegalArgumentException(
+                    "encodingThreads must be positive");
+        }
+        this.encodingThreads = encodingThreads;
+        return this;
+    }
+}
@@ -20,20 +20,31 @@ package org.eurekaclinical.datastore.bdb;
  * #L%
  */
 import org.eurekaclinical.datastore.DataStoreFactory;
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.bind.serial.SerialBinding;
 import com.sleepycat.bind.serial.StoredClassCatalog;
+import com.sleepycat.collections.CurrentTransaction;
 import com.sleepycat.je.Database;
 import com.sleepycat.je.DatabaseConfig;
+import com.sleepycat.je.DatabaseException;
 import com.sleepycat.je.DatabaseExistsException;
 import com.sleepycat.je.DatabaseNotFoundException;
+import com.sleepycat.je.Durability;
 import com.sleepycat.je.Environment;
 import com.sleepycat.je.EnvironmentConfig;
 import com.sleepycat.je.EnvironmentFailureException;
 import com.sleepycat.je.OperationFailureException;
+import com.sleepycat.je.Transaction;
+import com.sleepycat.je.TransactionConfig;
 import java.io.File;
+import java.io.IOError;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -46,6 +57,12 @@ import java.util.logging.Logger;
  * implementing {@link #createEnvConfig() }, {@link #createDatabaseConfig() },
  * and {@link #createClassCatalog(com.sleepycat.je.Environment)}, respectively.
  * The resulting concrete class manages the lifecycle of Berkeley DB databases.
+ * By default, keys and values are stored using Java serialization; the 
+ * default for values may be changed by overriding
+ * {@link #createDefaultValueBinding(com.sleepycat.bind.serial.StoredClassCatalog) }.
+ * Other bindings, and other per-data store options such as value 
+ * compression, key prefixing and value deduplication, may be specified
+ * with {@link #getInstance(java.lang.String, org.eurekaclinical.datastore.bdb.BdbStoreConfig) }.
  *
  * @author Andrew Post
  *
@@ -61,6 +78,8 @@ public abstract class BdbStoreFactory<E, V> implements DataStoreFactory<E, V> {
     private final File envFile;
     private final List<Database> databaseHandles;
     private final BdbStoreShutdownHook shutdownHook;
+    private Durability durability;
+    private long logFlushIntervalMillis;
 
     /**
      * Creates a new Berkeley DB data store factory instance, setting the
@@ -81,22 +100,441 @@ public abstract class BdbStoreFactory<E, V> implements DataStoreFactory<E, V> {
         Runtime.getRuntime().addShutdownHook(this.shutdownHook);
     }
 
+    /**
+     * Sets the default durability of commits in this factory's environment,
+     * such as {@link Durability#COMMIT_SYNC}, 
+     * {@link Durability#COMMIT_WRITE_NO_SYNC} or 
+     * {@link Durability#COMMIT_NO_SYNC}. It only affects transactional data
+     * stores, which may override it with
+     * {@link BdbStoreConfig#setDurability(com.sleepycat.je.Durability) };
+     * writes to non-transactional data stores are not committed. It must be
+     * called before the first data store is opened.
+     *
+     * @param durability the durability, or <code>null</code> for the 
+     * environment config's durability.
+     *
+     * @throws IllegalStateException if a data store has been opened already.
+     */
+    public synchronized void setDurability(Durability durability) {
+        checkEnvironmentNotCreated();
+        this.durability = durability;
+    }
+
+    /**
+     * Sets how often a background thread writes and fsyncs the log, which
+     * bounds how many commits with a relaxed durability may be lost in a 
+     * crash. Berkeley DB does this every 20 seconds by default. It must be
+     * called before the first data store is opened.
+     *
+     * @param interval the interval, or 0 for Berkeley DB's default.
+     * @param unit the interval's unit. Cannot be <code>null</code>.
+     *
+     * @throws IllegalStateException if a data store has been opened already.
+     */
+    public synchronized void setLogFlushInterval(long interval, 
+            TimeUnit unit) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("interval cannot be negative");
+        }
+        checkEnvironmentNotCreated();
+        this.logFlushIntervalMillis = unit.toMillis(interval);
+    }
+
     @Override
     public BdbMap<E, V> getInstance(String dbName) throws IOException {
+        return getInstance(dbName, (EntryBinding<E>) null, 
+                (EntryBinding<V>) null);
+    }
+
+    /**
+     * Opens a data store that converts keys and values to and from bytes
+     * using the provided bindings, creating the data store if needed. The
+     * bindings are not persisted, so a data store must be opened with the
+     * same bindings every time. See {@link BdbBindings} for built-in
+     * bindings.
+     *
+     * @param dbName the data store's name. Cannot be <code>null</code>.
+     * @param keyBinding the binding for keys, or <code>null</code> to use
+     * Java serialization.
+     * @param valueBinding the binding for values, or <code>null</code> to use
+     * the default value binding.
+     *
+     * @return the opened data store.
+     *
+     * @throws IOException if an error occurs while getting or creating the
+     * data store.
+     */
+    public BdbMap<E, V> getInstance(String dbName, EntryBinding<E> keyBinding,
+            EntryBinding<V> valueBinding) throws IOException {
+        return getInstance(dbName, new BdbStoreConfig<E, V>()
+                .setKeyBinding(keyBinding)
+                .setValueBinding(valueBinding));
+    }
+
+    /**
+     * Opens a data store with the provided options, creating the data store
+     * if needed.
+     *
+     * @param dbName the data store's name. Cannot be <code>null</code>.
+     * @param config the data store's options. Cannot be <code>null</code>.
+     *
+     * @return the opened data store.
+     *
+     * @throws IOException if an error occurs while getting or creating the
+     * data store.
+     */
+    public BdbMap<E, V> getInstance(String dbName, 
+            BdbStoreConfig<E, V> config) throws IOException {
+        if (dbName == null) {
+            throw new IllegalArgumentException("dbName cannot be null");
+        }
+        if (config == null) {
+            throw new IllegalArgumentException("config cannot be null");
+        }
+        try {
+            Database databaseHandle = createOrOpenDatabase(dbName, config);
+            if (config.isDeduplicating()) {
+                Database valueDatabaseHandle = createOrOpenDatabase(
+                        dbName + BdbDedupMap.VALUES_SUFFIX, config);
+                return new BdbDedupMap<>(this.envInfo, databaseHandle,
+                        valueDatabaseHandle,
+                        keyBindingOrDefault(config.getKeyBinding()),
+                        valueBinding(config), config);
+            }
+            return new BdbMap<>(this.envInfo, databaseHandle,
+                    keyBindingOrDefault(config.getKeyBinding()),
+                    valueBinding(config), config);
+        } catch (OperationFailureException | EnvironmentFailureException
+                | IllegalStateException | IllegalArgumentException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Opens a data store with range views and the provided options, 
+     * creating the data store if needed.
+     *
+     * @param dbName the data store's name. Cannot be <code>null</code>.
+     * @param config the data store's options. Cannot be <code>null</code>.
+     * Its key binding must be order-preserving, so it cannot be 
+     * <code>null</code> or a {@link SerialBinding}, and it cannot be 
+     * deduplicating.
+     *
+     * @return the opened data store.
+     *
+     * @throws IOException if an error occurs while getting or creating the
+     * data store.
+     */
+    public BdbSortedMap<E, V> getSortedInstance(String dbName,
+            BdbStoreConfig<E, V> config) throws IOException {
         if (dbName == null) {
             throw new IllegalArgumentException("dbName cannot be null");
         }
+        if (config == null) {
+            throw new IllegalArgumentException("config cannot be null");
+        }
+        if (config.getKeyBinding() == null 
+                || config.getKeyBinding() instanceof SerialBinding) {
+            throw new IllegalArgumentException(
+                    "sorted data stores need an order-preserving key binding");
+        }
+        if (config.isDeduplicating()) {
+            throw new IllegalArgumentException(
+                    "sorted data stores cannot be deduplicating");
+        }
+        try {
+            Database databaseHandle = createOrOpenDatabase(dbName, config);
+            return new BdbSortedMap<>(this.envInfo, databaseHandle,
+                    config.getKeyBinding(), valueBinding(config), config);
+        } catch (OperationFailureException | EnvironmentFailureException
+                | IllegalStateException | IllegalArgumentException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Opens a data store, creating it if needed, with bindings chosen for
+     * the given key and value classes by 
+     * {@link BdbBindings#forClass(java.lang.Class) }. Classes annotated with
+     * {@link TupleBound} get their generated bindings, strings and 
+     * primitive wrappers get tuple bindings, and other classes get the 
+     * default bindings.
+     *
+     * @param dbName the data store's name. Cannot be <code>null</code>.
+     * @param keyClass the key class. Cannot be <code>null</code>.
+     * @param valueClass the value class. Cannot be <code>null</code>.
+     *
+     * @return the opened data store.
+     *
+     * @throws IOException if an error occurs while getting or creating the
+     * data store.
+     */
+    public BdbMap<E, V> getInstance(String dbName, Class<E> keyClass,
+            Class<V> valueClass) throws IOException {
+        return getInstance(dbName, BdbBindings.forClass(keyClass),
+                BdbBindings.forClass(valueClass));
+    }
+
+    /**
+     * Opens a data store with <code>long</code> keys, creating it if needed.
+     * Values are stored using the default value binding.
+     *
+     * @param dbName the data store's name. Cannot be <code>null</code>.
+     *
+     * @return the opened data store.
+     *
+     * @throws IOException if an error occurs while getting or creating the
+     * data store.
+     */
+    public BdbLongMap<V> getLongKeyInstance(String dbName) throws IOException {
+        return getLongKeyInstance(dbName, (EntryBinding<V>) null);
+    }
+
+    /**
+     * Opens a data store with <code>long</code> keys that converts values to
+     * and from bytes using the provided binding, creating the data store if
+     * needed.
+     *
+     * @param dbName the data store's name. Cannot be <code>null</code>.
+     * @param valueBinding the binding for values, or <code>null</code> to use
+     * the default value binding.
+     *
+     * @return the opened data store.
+     *
+     * @throws IOException if an error occurs while getting or creating the
+     * data store.
+     */
+    public BdbLongMap<V> getLongKeyInstance(String dbName,
+            EntryBinding<V> valueBinding) throws IOException {
+        return getLongKeyInstance(dbName, 
+                new BdbStoreConfig<Long, V>().setValueBinding(valueBinding));
+    }
+
+    /**
+     * Opens a data store with <code>long</code> keys and the provided 
+     * options, creating the data store if needed.
+     *
+     * @param dbName the data store's name. Cannot be <code>null</code>.
+     * @param config the data store's options. Cannot be <code>null</code>.
+     * Its key binding must be <code>null</code>, and it cannot be 
+     * deduplicating.
+     *
+     * @return the opened data store.
+     *
+     * @throws IOException if an error occurs while getting or creating the
+     * data store.
+     */
+    public BdbLongMap<V> getLongKeyInstance(String dbName,
+            BdbStoreConfig<Long, V> config) throws IOException {
+        if (dbName == null) {
+            throw new IllegalArgumentException("dbName cannot be null");
+        }
+        if (config == null) {
+            throw new IllegalArgumentException("config cannot be null");
+        }
+        if (config.getKeyBinding() != null) {
+            throw new IllegalArgumentException(
+                    "long-keyed data stores cannot have a key binding");
+        }
+        if (config.isDeduplicating()) {
+            throw new IllegalArgumentException(
+                    "long-keyed data stores cannot be deduplicating");
+        }
+        try {
+            Database databaseHandle = createOrOpenDatabase(dbName, config);
+            return new BdbLongMap<>(this.envInfo, databaseHandle, 
+                    valueBinding(config), config);
+        } catch (OperationFailureException | EnvironmentFailureException
+                | IllegalStateException | IllegalArgumentException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Opens a data store whose keys and values are byte arrays, creating it
+     * if needed. Keys and values are stored as they are, without any
+     * conversion.
+     *
+     * @param dbName the data store's name. Cannot be <code>null</code>.
+     *
+     * @return the opened data store.
+     *
+     * @throws IOException if an error occurs while getting or creating the
+     * data store.
+     */
+    public BdbBytesMap getBytesInstance(String dbName) throws IOException {
+        return getBytesInstance(dbName, new BdbStoreConfig<>());
+    }
+
+    /**
+     * Opens a data store whose keys and values are byte arrays with the 
+     * provided options, creating it if needed. Keys and values are stored
+     * as they are, without any conversion.
+     *
+     * @param dbName the data store's name. Cannot be <code>null</code>.
+     * @param config the data store's options. Cannot be <code>null</code>.
+     * Its key and value bindings must be <code>null</code>, and it cannot 
+     * be compressed or deduplicating.
+     *
+     * @return the opened data store.
+     *
+     * @throws IOException if an error occurs while getting or creating the
+     * data store.
+     */
+    public BdbBytesMap getBytesInstance(String dbName,
+            BdbStoreConfig<byte[], byte[]> config) throws IOException {
+        if (dbName == null) {
+            throw new IllegalArgumentException("dbName cannot be null");
+        }
+        if (config == null) {
+            throw new IllegalArgumentException("config cannot be null");
+        }
+        if (config.getKeyBinding() != null 
+                || config.getValueBinding() != null) {
+            throw new IllegalArgumentException(
+                    "byte array data stores cannot have bindings");
+        }
+        if (config.getCompressionAlgorithm() != null) {
+            throw new IllegalArgumentException(
+                    "byte array data stores cannot be compressed");
+        }
+        if (config.isDeduplicating()) {
+            throw new IllegalArgumentException(
+                    "byte array data stores cannot be deduplicating");
+        }
+        try {
+            Database databaseHandle = createOrOpenDatabase(dbName, config);
+            return new BdbBytesMap(this.envInfo, databaseHandle, config);
+        } catch (OperationFailureException | EnvironmentFailureException
+                | IllegalStateException | IllegalArgumentException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Passes each of the keys and values of the given data stores to the 
+     * given consumer with one pass over the log files, in the order in 
+     * which the records are stored rather than in key order. See
+     * {@link BdbMap#scanUnordered(java.util.function.BiConsumer) }.
+     *
+     * @param stores data stores opened by this factory. Cannot be 
+     * <code>null</code>.
+     * @param consumer the consumer of the keys and values. Cannot be 
+     * <code>null</code>.
+     *
+     * @throws IllegalArgumentException if a data store was not opened by 
+     * this factory.
+     * @throws IOError if an error occurs while reading the data stores.
+     */
+    public void scanUnordered(Collection<? extends BdbMap<E, V>> stores,
+            BiConsumer<? super E, ? super V> consumer) {
+        if (stores == null) {
+            throw new IllegalArgumentException("stores cannot be null");
+        }
+        if (consumer == null) {
+            throw new IllegalArgumentException("consumer cannot be null");
+        }
+        for (BdbMap<E, V> store : stores) {
+            if (store.getEnvironmentInfo() != this.envInfo) {
+                throw new IllegalArgumentException(
+                        "stores must be opened by this factory");
+            }
+        }
+        if (!stores.isEmpty()) {
+            BdbMap.scanUnordered(new ArrayList<>(stores), consumer);
+        }
+    }
+
+    /**
+     * Runs the given work in a transaction with the environment's default
+     * configuration. See 
+     * {@link #inTransaction(com.sleepycat.je.TransactionConfig, org.eurekaclinical.datastore.bdb.BdbTransactionWork) }.
+     *
+     * @param <T> the type of the work's result.
+     * @param work the work. Cannot be <code>null</code>.
+     * @return the work's result.
+     *
+     * @throws IOException if the work throws it, or if an error occurs
+     * starting or committing the transaction.
+     */
+    public <T> T inTransaction(BdbTransactionWork<T> work) 
+            throws IOException {
+        return inTransaction(null, work);
+    }
+
+    /**
+     * Runs the given work in a transaction. Every operation that the work
+     * does in the current thread on this factory's transactional data stores
+     * (see {@link BdbStoreConfig#setTransactional(boolean) }) is part of the
+     * transaction, so writes to several data stores are committed together
+     * or not at all. The transaction is committed when the work returns, 
+     * and aborted if the work throws an exception. If the current thread is
+     * in a transaction already, the work joins it, and the outermost call 
+     * commits or aborts.
+     *
+     * @param <T> the type of the work's result.
+     * @param config the transaction's configuration, for example its 
+     * durability, or <code>null</code> for the environment's defaults.
+     * @param work the work. Cannot be <code>null</code>.
+     * @return the work's result.
+     *
+     * @throws IOException if the work throws it, or if an error occurs
+     * starting or committing the transaction.
+     * @throws IllegalStateException if the environment is not 
+     * transactional.
+     */
+    public <T> T inTransaction(TransactionConfig config,
+            BdbTransactionWork<T> work) throws IOException {
+        if (work == null) {
+            throw new IllegalArgumentException("work cannot be null");
+        }
+        CurrentTransaction currentTxn;
         try {
             synchronized (this) {
                 if (this.envInfo == null) {
                     createEnvironmentInfo();
                 }
             }
-            return createOrOpenDatabase(dbName);
+            currentTxn = CurrentTransaction.getInstance(
+                    this.envInfo.getEnvironment());
         } catch (OperationFailureException | EnvironmentFailureException
                 | IllegalStateException | IllegalArgumentException ex) {
             throw new IOException(ex);
         }
+        if (currentTxn == null) {
+            throw new IllegalStateException(
+                    "The environment is not transactional");
+        }
+        Transaction outerTxn = currentTxn.getTransaction();
+        if (outerTxn != null) {
+            return work.run(outerTxn);
+        }
+        Transaction txn;
+        try {
+            txn = currentTxn.beginTransaction(config);
+        } catch (DatabaseException | IllegalStateException ex) {
+            throw new IOException(ex);
+        }
+        boolean committed = false;
+        try {
+            T result = work.run(txn);
+            try {
+                currentTxn.commitTransaction();
+            } catch (DatabaseException | IllegalStateException ex) {
+                throw new IOException(ex);
+            }
+            committed = true;
+            return result;
+        } finally {
+            if (!committed && currentTxn.getTransaction() == txn) {
+                try {
+                    currentTxn.abortTransaction();
+                } catch (DatabaseException | IllegalStateException ex) {
+                    LOGGER.log(Level.SEVERE, "Error aborting transaction",
+                            ex);
+                }
+            }
+        }
     }
 
     @Override
@@ -162,6 +600,21 @@ public abstract class BdbStoreFactory<E, V> implements DataStoreFactory<E, V> {
      */
     protected abstract StoredClassCatalog createClassCatalog(Environment env);
 
+    /**
+     * Returns a new binding for the values of data stores that are opened 
+     * without a value binding. This implementation returns a binding that
+     * uses Java serialization with the provided class catalog. This should
+     * be called only by the <code>getInstance</code> methods.
+     *
+     * @param classCatalog the environment's class catalog.
+     *
+     * @return a new value binding.
+     */
+    protected EntryBinding<V> createDefaultValueBinding(
+            StoredClassCatalog classCatalog) {
+        return new SerialBinding<>(classCatalog, null);
+    }
+
     /**
      * Closes a database that was previously created by this factory instance.
      *
@@ -243,6 +696,13 @@ public abstract class BdbStoreFactory<E, V> implements DataStoreFactory<E, V> {
      */
     private Environment createEnvironment() {
         EnvironmentConfig envConf = createEnvConfig();
+        if (this.durability != null) {
+            envConf.setDurability(this.durability);
+        }
+        if (this.logFlushIntervalMillis > 0) {
+            envConf.setConfigParam(EnvironmentConfig.LOG_FLUSH_SYNC_INTERVAL,
+                    this.logFlushIntervalMillis + " ms");
+        }
         if (!envFile.exists()) {
             envFile.mkdirs();
         }
@@ -253,15 +713,62 @@ public abstract class BdbStoreFactory<E, V> implements DataStoreFactory<E, V> {
         return new Environment(this.envFile, envConf);
     }
 
-    private BdbMap<E, V> createOrOpenDatabase(String dbName)
+    private void checkEnvironmentNotCreated() {
+        if (this.envInfo != null) {
+            throw new IllegalStateException(
+                    "The environment has been created already");
+        }
+    }
+
+    private <T> EntryBinding<T> keyBindingOrDefault(
+            EntryBinding<T> keyBinding) {
+        return keyBinding != null ? keyBinding
+                : new SerialBinding<>(this.envInfo.getClassCatalog(), null);
+    }
+
+    private EntryBinding<V> valueBinding(BdbStoreConfig<?, V> config) {
+        EntryBinding<V> valueBinding = config.getValueBinding();
+        if (valueBinding == null) {
+            valueBinding 
+                    = createDefaultValueBinding(this.envInfo.getClassCatalog());
+        }
+        if (config.getCompressionAlgorithm() != null) {
+            valueBinding = new CompressingBinding<>(valueBinding,
+                    config.getCompressionAlgorithm(),
+                    config.getCompressionThreshold(),
+                    config.getCompressionDictionary());
+        }
+        return valueBinding;
+    }
+
+    private Database createOrOpenDatabase(String dbName,
+            BdbStoreConfig<?, ?> config) 
             throws IllegalArgumentException, IllegalStateException,
             DatabaseNotFoundException, DatabaseExistsException {
+        synchronized (this) {
+            if (this.envInfo == null) {
+                createEnvironmentInfo();
+            }
+        }
         DatabaseConfig dbConfig = createDatabaseConfig();
+        if (config != null && (config.isKeyPrefixing() 
+                || config.getKeyBinding() instanceof CompositeKeyBinding)) {
+            dbConfig.setKeyPrefixing(true);
+        }
+        if (config != null && config.isTransactional()) {
+            dbConfig.setTransactional(true);
+        } else if (config != null && config.getDurability() != null) {
+            throw new IllegalArgumentException(
+                    "Only transactional data stores have a durability");
+        }
+        if (config != null && config.isDeferredWrite()) {
+            dbConfig.setDeferredWrite(true);
+        }
         Database databaseHandle
                 = this.envInfo.getEnvironment().openDatabase(null, dbName,
                         dbConfig);
         this.databaseHandles.add(databaseHandle);
-        return new BdbMap<>(this.envInfo, databaseHandle);
+        return databaseHandle;
     }
 
 }
@@ -0,0 +1,48 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.sleepycat.je.Transaction;
+import java.io.IOException;
+
+/**
+ * Work to do in a transaction started by
+ * {@link BdbStoreFactory#inTransaction(org.eurekaclinical.datastore.bdb.BdbTransactionWork) }.
+ *
+ * @author Andrew Post
+ * @param <T> the type of the work's result.
+ */
+@FunctionalInterface
+public interface BdbTransactionWork<T> {
+
+    /**
+     * Does the work. Operations on transactional data stores of the factory
+     * that started the transaction, in the current thread, are part of the
+     * transaction.
+     *
+     * @param txn the transaction. The work must not commit or abort it.
+     * @return the work's result.
+     *
+     * @throws IOException if an error occurs, in which case the transaction
+     * is aborted.
+     */
+    T run(Transaction txn) throws IOException;
+}
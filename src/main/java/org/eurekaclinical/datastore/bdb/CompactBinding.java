@@ -0,0 +1,352 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.bind.tuple.TupleBinding;
+import com.sleepycat.bind.tuple.TupleInput;
+import com.sleepycat.bind.tuple.TupleOutput;
+import com.sleepycat.je.DatabaseEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * A binding that writes common JDK types and registered application classes
+ * compactly, and falls back to another binding, normally Java serialization,
+ * for everything else. Each value is written as a one-byte type tag followed
+ * by its data:
+ * <ul>
+ * <li>strings, primitive wrappers, {@link Date}s, {@link UUID}s and
+ * <code>byte[]</code>s are written as tuples, with integers and dates in a
+ * packed variable-length format;</li>
+ * <li>{@link ArrayList}s, {@link HashMap}s, {@link LinkedHashMap}s,
+ * {@link HashSet}s and {@link LinkedHashSet}s are written as their size 
+ * followed by their elements, each of which is written by this binding;</li>
+ * <li>instances of classes in the {@link CompactClassRegistry} are written as
+ * their class' identifier followed by the class' tuple binding's output;
+ * </li>
+ * <li>anything else, including subclasses of the above, is written by the
+ * fallback binding.</li>
+ * </ul>
+ * Decoded collections have the same class as the collections that were 
+ * written.
+ *
+ * This class is thread-safe if its fallback binding is.
+ *
+ * @author Andrew Post
+ * @param <T> the type to bind.
+ */
+public final class CompactBinding<T> implements EntryBinding<T> {
+
+    private static final int NULL = 0;
+    private static final int STRING = 1;
+    private static final int BOOLEAN_TRUE = 2;
+    private static final int BOOLEAN_FALSE = 3;
+    private static final int BYTE = 4;
+    private static final int SHORT = 5;
+    private static final int CHARACTER = 6;
+    private static final int INTEGER = 7;
+    private static final int LONG = 8;
+    private static final int FLOAT = 9;
+    private static final int DOUBLE = 10;
+    private static final int DATE = 11;
+    private static final int UUID_TAG = 12;
+    private static final int BYTES = 13;
+    private static final int ARRAY_LIST = 14;
+    private static final int HASH_MAP = 15;
+    private static final int LINKED_HASH_MAP = 16;
+    private static final int HASH_SET = 17;
+    private static final int LINKED_HASH_SET = 18;
+    private static final int REGISTERED = 19;
+    private static final int FALLBACK = 20;
+
+    private static final Map<Class<?>, Integer> TAGS = new HashMap<>();
+
+    static {
+        TAGS.put(String.class, STRING);
+        TAGS.put(Byte.class, BYTE);
+        TAGS.put(Short.class, SHORT);
+        TAGS.put(Character.class, CHARACTER);
+        TAGS.put(Integer.class, INTEGER);
+        TAGS.put(Long.class, LONG);
+        TAGS.put(Float.class, FLOAT);
+        TAGS.put(Double.class, DOUBLE);
+        TAGS.put(Date.class, DATE);
+        TAGS.put(UUID.class, UUID_TAG);
+        TAGS.put(byte[].class, BYTES);
+        TAGS.put(ArrayList.class, ARRAY_LIST);
+        TAGS.put(HashMap.class, HASH_MAP);
+        TAGS.put(LinkedHashMap.class, LINKED_HASH_MAP);
+        TAGS.put(HashSet.class, HASH_SET);
+        TAGS.put(LinkedHashSet.class, LINKED_HASH_SET);
+    }
+
+    private final CompactClassRegistry registry;
+    private final EntryBinding<Object> fallbackBinding;
+
+    /**
+     * Creates a compact binding.
+     * 
+     * @param registry the application classes to write compactly, or 
+     * <code>null</code> if there are none. Later changes to the registry do
+     * not affect this binding.
+     * @param fallbackBinding the binding for all other objects, or
+     * <code>null</code> if writing any other object is an error.
+     */
+    public CompactBinding(CompactClassRegistry registry,
+            EntryBinding<Object> fallbackBinding) {
+        this.registry = registry != null 
+                ? registry.copy() : new CompactClassRegistry();
+        this.fallbackBinding = fallbackBinding;
+    }
+
+    @Override
+    public T entryToObject(DatabaseEntry entry) {
+        TupleInput input = TupleBinding.entryToInput(entry);
+        @SuppressWarnings("unchecked")
+        T result = (T) read(input);
+        return result;
+    }
+
+    @Override
+    public void objectToEntry(T object, DatabaseEntry entry) {
+        TupleOutput output = new TupleOutput();
+        write(object, output);
+        TupleBinding.outputToEntry(output, entry);
+    }
+
+    private void write(Object object, TupleOutput output) {
+        if (object == null) {
+            output.writeByte(NULL);
+            return;
+        }
+        Class<?> cls = object.getClass();
+        Integer tag = TAGS.get(cls);
+        if (tag != null) {
+            writeTagged(tag, object, output);
+        } else if (cls == Boolean.class) {
+            output.writeByte((Boolean) object ? BOOLEAN_TRUE : BOOLEAN_FALSE);
+        } else {
+            CompactClassRegistry.Registration<?> registration
+                    = this.registry.getRegistration(cls);
+            if (registration != null) {
+                output.writeByte(REGISTERED);
+                output.writePackedInt(registration.getId());
+                writeRegistered(registration, object, output);
+            } else if (this.fallbackBinding != null) {
+                DatabaseEntry entry = new DatabaseEntry();
+                this.fallbackBinding.objectToEntry(object, entry);
+                output.writeByte(FALLBACK);
+                output.writePackedInt(entry.getSize());
+                output.writeFast(entry.getData(), entry.getOffset(), 
+                        entry.getSize());
+            } else {
+                throw new IllegalArgumentException("Cannot write "
+                        + cls.getName() + ": it is not registered and there "
+                        + "is no fallback binding");
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <U> void writeRegistered(
+            CompactClassRegistry.Registration<U> registration, Object object,
+            TupleOutput output) {
+        registration.getBinding().objectToEntry((U) object, output);
+    }
+
+    private void writeTagged(int tag, Object object, TupleOutput output) {
+        output.writeByte(tag);
+        switch (tag) {
+            case STRING:
+                output.writeString((String) object);
+                break;
+            case BYTE:
+                output.writeByte((Byte) object);
+                break;
+            case SHORT:
+                output.writeShort((Short) object);
+                break;
+            case CHARACTER:
+                output.writeChar((Character) object);
+                break;
+            case INTEGER:
+                output.writePackedInt((Integer) object);
+                break;
+            case LONG:
+                output.writePackedLong((Long) object);
+                break;
+            case FLOAT:
+                output.writeFloat((Float) object);
+                break;
+            case DOUBLE:
+                output.writeDouble((Double) object);
+                break;
+            case DATE:
+                output.writePackedLong(((Date) object).getTime());
+                break;
+            case UUID_TAG:
+                output.writeLong(((UUID) object).getMostSignificantBits());
+                output.writeLong(((UUID) object).getLeastSignificantBits());
+                break;
+            case BYTES:
+                byte[] bytes = (byte[]) object;
+                output.writePackedInt(bytes.length);
+                output.writeFast(bytes);
+                break;
+            case ARRAY_LIST:
+            case HASH_SET:
+            case LINKED_HASH_SET:
+                Collection<?> collection = (Collection<?>) object;
+                output.writePackedInt(collection.size());
+                for (Object element : collection) {
+                    write(element, output);
+                }
+                break;
+            case HASH_MAP:
+            case LINKED_HASH_MAP:
+                Map<?, ?> map = (Map<?, ?>) object;
+                output.writePackedInt(map.size());
+                for (Map.Entry<?, ?> me : map.entrySet()) {
+                    write(me.getKey(), output);
+                    write(me.getValue(), output);
+                }
+                break;
+            default:
+                throw new AssertionError("Unexpected tag " + tag);
+        }
+    }
+
+    private Object read(TupleInput input) {
+        int tag = input.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return input.readString();
+            case BOOLEAN_TRUE:
+                return Boolean.TRUE;
+            case BOOLEAN_FALSE:
+                return Boolean.FALSE;
+            case BYTE:
+                return input.readByte();
+            case SHORT:
+                return input.readShort();
+            case CHARACTER:
+                return input.readChar();
+            case INTEGER:
+                return input.readPackedInt();
+            case LONG:
+                return input.readPackedLong();
+            case FLOAT:
+                return input.readFloat();
+            case DOUBLE:
+                return input.readDouble();
+            case DATE:
+                return new Date(input.readPackedLong());
+            case UUID_TAG:
+                long mostSigBits = input.readLong();
+                return new UUID(mostSigBits, input.readLong());
+            case BYTES:
+                byte[] bytes = new byte[input.readPackedInt()];
+                input.readFast(bytes);
+                return bytes;
+            case ARRAY_LIST: {
+                int size = input.readPackedInt();
+                List<Object> list = new ArrayList<>(size);
+                readElements(input, size, list);
+                return list;
+            }
+            case HASH_SET: {
+                int size = input.readPackedInt();
+                Set<Object> set = new HashSet<>(capacity(size));
+                readElements(input, size, set);
+                return set;
+            }
+            case LINKED_HASH_SET: {
+                int size = input.readPackedInt();
+                Set<Object> set = new LinkedHashSet<>(capacity(size));
+                readElements(input, size, set);
+                return set;
+            }
+            case HASH_MAP: {
+                int size = input.readPackedInt();
+                Map<Object, Object> map = new HashMap<>(capacity(size));
+                readEntries(input, size, map);
+                return map;
+            }
+            case LINKED_HASH_MAP: {
+                int size = input.readPackedInt();
+                Map<Object, Object> map = new LinkedHashMap<>(capacity(size));
+                readEntries(input, size, map);
+                return map;
+            }
+            case REGISTERED:
+                int id = input.readPackedInt();
+                CompactClassRegistry.Registration<?> registration
+                        = this.registry.getRegistration(id);
+                if (registration == null) {
+                    throw new IllegalStateException(
+                            "No class is registered with id " + id);
+                }
+                return registration.getBinding().entryToObject(input);
+            case FALLBACK:
+                if (this.fallbackBinding == null) {
+                    throw new IllegalStateException(
+                            "Cannot read value: there is no fallback binding");
+                }
+                byte[] data = new byte[input.readPackedInt()];
+                input.readFast(data);
+                return this.fallbackBinding.entryToObject(
+                        new DatabaseEntry(data));
+            default:
+                throw new IllegalStateException("Unexpected tag " + tag);
+        }
+    }
+
+    private void readElements(TupleInput input, int size,
+            Collection<Object> collection) {
+        for (int i = 0; i < size; i++) {
+            collection.add(read(input));
+        }
+    }
+
+    private void readEntries(TupleInput input, int size,
+            Map<Object, Object> map) {
+        for (int i = 0; i < size; i++) {
+            Object key = read(input);
+            map.put(key, read(input));
+        }
+    }
+
+    private static int capacity(int size) {
+        return Math.max((int) (size / .75f) + 1, 16);
+    }
+}
@@ -0,0 +1,172 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.bind.tuple.TupleBinding;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Assigns numeric identifiers to application classes for 
+ * {@link CompactBinding}. A registered class' instances are stored as its
+ * identifier followed by the output of its tuple binding, instead of as a
+ * Java serialization stream. Identifiers are stored in the database, so a
+ * class must keep its identifier for as long as data written with it 
+ * exists, and identifiers must never be reused for a different class.
+ *
+ * Register all classes before passing the registry to a binding or store
+ * factory. This class is not thread-safe.
+ *
+ * @author Andrew Post
+ */
+public final class CompactClassRegistry {
+
+    private final Map<Integer, Registration<?>> registrationsById;
+    private final Map<Class<?>, Registration<?>> registrationsByClass;
+
+    /**
+     * Creates an empty registry.
+     */
+    public CompactClassRegistry() {
+        this.registrationsById = new HashMap<>();
+        this.registrationsByClass = new HashMap<>();
+    }
+
+    /**
+     * Registers a class annotated with {@link TupleBound}, using its 
+     * generated binding.
+     *
+     * @param <T> the class' type.
+     * @param id the class' identifier. Must not be negative.
+     * @param cls the class. Cannot be <code>null</code>.
+     * @return this registry.
+     *
+     * @throws IllegalArgumentException if the identifier or class is 
+     * already registered, or the class has no generated tuple binding.
+     */
+    public <T> CompactClassRegistry register(int id, Class<T> cls) {
+        if (cls == null) {
+            throw new IllegalArgumentException("cls cannot be null");
+        }
+        if (!cls.isAnnotationPresent(TupleBound.class)) {
+            throw new IllegalArgumentException(cls.getName()
+                    + " is not annotated with @TupleBound");
+        }
+        EntryBinding<T> binding = BdbBindings.forClass(cls);
+        return register(id, cls, (TupleBinding<T>) binding);
+    }
+
+    /**
+     * Registers a class with the given tuple binding.
+     *
+     * @param <T> the class' type.
+     * @param id the class' identifier. Must not be negative.
+     * @param cls the class. Cannot be <code>null</code>.
+     * @param binding the class' binding. Cannot be <code>null</code>.
+     * @return this registry.
+     *
+     * @throws IllegalArgumentException if the identifier or class is 
+     * already registered.
+     */
+    public <T> CompactClassRegistry register(int id, Class<T> cls,
+            TupleBinding<T> binding) {
+        if (id < 0) {
+            throw new IllegalArgumentException("id cannot be negative");
+        }
+        if (cls == null) {
+            throw new IllegalArgumentException("cls cannot be null");
+        }
+        if (binding == null) {
+            throw new IllegalArgumentException("binding cannot be null");
+        }
+        if (this.registrationsById.containsKey(id)) {
+            throw new IllegalArgumentException("id " + id 
+                    + " is already registered");
+        }
+        if (this.registrationsByClass.containsKey(cls)) {
+            throw new IllegalArgumentException(cls.getName()
+                    + " is already registered");
+        }
+        Registration<T> registration = new Registration<>(id, binding);
+        this.registrationsById.put(id, registration);
+        this.registrationsByClass.put(cls, registration);
+        return this;
+    }
+
+    /**
+     * Returns a copy of this registry, so that bindings are not affected by
+     * later registrations.
+     * 
+     * @return a copy of this registry.
+     */
+    CompactClassRegistry copy() {
+        CompactClassRegistry result = new CompactClassRegistry();
+        result.registrationsById.putAll(this.registrationsById);
+        result.registrationsByClass.putAll(this.registrationsByClass);
+        return result;
+    }
+
+    /**
+     * Returns the registration of a class.
+     * 
+     * @param cls a class.
+     * @return the class' registration, or <code>null</code> if it is not
+     * registered.
+     */
+    Registration<?> getRegistration(Class<?> cls) {
+        return this.registrationsByClass.get(cls);
+    }
+
+    /**
+     * Returns the registration with the given identifier.
+     * 
+     * @param id an identifier.
+     * @return the registration, or <code>null</code> if there is none.
+     */
+    Registration<?> getRegistration(int id) {
+        return this.registrationsById.get(id);
+    }
+
+    /**
+     * A registered class' identifier and binding.
+     * 
+     * @param <T> the class' type.
+     */
+    static final class Registration<T> {
+
+        private final int id;
+        private final TupleBinding<T> binding;
+
+        Registration(int id, TupleBinding<T> binding) {
+            this.id = id;
+            this.binding = binding;
+        }
+
+        int getId() {
+            return this.id;
+        }
+
+        TupleBinding<T> getBinding() {
+            return this.binding;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A key made of an ordered list of components, such as a patient id, an
+ * encounter id and a timestamp. Use it with a {@link CompositeKeyBinding},
+ * which stores keys so that the database orders them by their first 
+ * component, then by their second, and so on. A key with fewer components 
+ * than the binding declares is a prefix of every key that starts with the 
+ * same components, and sorts before all of them.
+ *
+ * Instances of this class are immutable if their components are.
+ *
+ * @author Andrew Post
+ */
+public final class CompositeKey implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Object[] components;
+
+    private CompositeKey(Object[] components) {
+        this.components = components;
+    }
+
+    /**
+     * Creates a key from the given components.
+     *
+     * @param components the components. Cannot be <code>null</code> or 
+     * contain <code>null</code>.
+     * @return a new key.
+     */
+    public static CompositeKey of(Object... components) {
+        if (components == null) {
+            throw new IllegalArgumentException("components cannot be null");
+        }
+        Object[] copy = components.clone();
+        for (int i = 0; i < copy.length; i++) {
+            if (copy[i] == null) {
+                throw new IllegalArgumentException(
+                        "component " + i + " cannot be null");
+            }
+        }
+        return new CompositeKey(copy);
+    }
+
+    /**
+     * Returns the number of components.
+     *
+     * @return the number of components.
+     */
+    public int size() {
+        return this.components.length;
+    }
+
+    /**
+     * Returns a component.
+     *
+     * @param index the index of the component.
+     * @return the component.
+     *
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    public Object get(int index) {
+        return this.components[index];
+    }
+
+    /**
+     * Returns a component cast to the given type.
+     *
+     * @param <T> the component's type.
+     * @param index the index of the component.
+     * @param type the component's type.
+     * @return the component.
+     *
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     * @throws ClassCastException if the component is not of the given type.
+     */
+    public <T> T get(int index, Class<T> type) {
+        return type.cast(this.components[index]);
+    }
+
+    /**
+     * Returns a key with the first <code>length</code> components of this
+     * key.
+     *
+     * @param length the number of components.
+     * @return the prefix.
+     *
+     * @throws IllegalArgumentException if the length is negative or greater
+     * than the number of components.
+     */
+    public CompositeKey prefix(int length) {
+        if (length < 0 || length > this.components.length) {
+            throw new IllegalArgumentException("invalid length " + length);
+        }
+        return new CompositeKey(Arrays.copyOf(this.components, length));
+    }
+
+    /**
+     * Returns whether this key starts with the components of the given key.
+     *
+     * @param prefix a key. Cannot be <code>null</code>.
+     * @return <code>true</code> or <code>false</code>.
+     */
+    public boolean startsWith(CompositeKey prefix) {
+        if (prefix.components.length > this.components.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.components.length; i++) {
+            if (!this.components[i].equals(prefix.components[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.components);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final CompositeKey other = (CompositeKey) obj;
+        return Arrays.equals(this.components, other.components);
+    }
+
+    @Override
+    public String toString() {
+        return "CompositeKey" + Arrays.toString(this.components);
+    }
+}
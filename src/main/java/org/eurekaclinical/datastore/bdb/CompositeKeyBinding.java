@@ -0,0 +1,170 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.sleepycat.bind.tuple.TupleBinding;
+import com.sleepycat.bind.tuple.TupleInput;
+import com.sleepycat.bind.tuple.TupleOutput;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * A binding for {@link CompositeKey}s with a fixed list of component types.
+ * Each component is stored with an order-preserving tuple encoding, one 
+ * after another, so the database orders keys by their first component, then
+ * by their second, and so on, and all keys that share leading components
+ * are adjacent. Supported component types are {@link String}, 
+ * {@link Integer}, {@link Long}, {@link Double}, {@link Boolean}, 
+ * {@link Date} and {@link UUID}. Strings are ordered the same way as
+ * {@link String#compareTo(java.lang.String) } orders strings that do not
+ * contain the null character.
+ *
+ * Keys with fewer components than the binding declares may be stored and
+ * are read back with the same number of components.
+ *
+ * {@link BdbStoreFactory} turns on Berkeley DB key prefixing for data stores
+ * that use this binding, so that the leading bytes that neighboring keys
+ * share are stored only once per B-tree node.
+ *
+ * Instances of this class are thread-safe.
+ *
+ * @author Andrew Post
+ */
+public final class CompositeKeyBinding extends TupleBinding<CompositeKey> {
+
+    private static final Class<?>[] SUPPORTED_TYPES = {
+        String.class, Integer.class, Long.class, Double.class, Boolean.class,
+        Date.class, UUID.class
+    };
+
+    private final Class<?>[] componentTypes;
+
+    /**
+     * Creates a binding for keys with the given component types.
+     *
+     * @param componentTypes the component types, in order. Cannot be 
+     * <code>null</code> or empty.
+     *
+     * @throws IllegalArgumentException if a component type is not 
+     * supported.
+     */
+    public CompositeKeyBinding(Class<?>... componentTypes) {
+        if (componentTypes == null || componentTypes.length == 0) {
+            throw new IllegalArgumentException(
+                    "componentTypes cannot be null or empty");
+        }
+        this.componentTypes = componentTypes.clone();
+        for (Class<?> componentType : this.componentTypes) {
+            if (!Arrays.asList(SUPPORTED_TYPES).contains(componentType)) {
+                throw new IllegalArgumentException(
+                        "Unsupported component type " + componentType);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of components of keys stored with this binding.
+     *
+     * @return the number of components.
+     */
+    public int getComponentCount() {
+        return this.componentTypes.length;
+    }
+
+    /**
+     * Returns the type of a component.
+     *
+     * @param index the index of the component.
+     * @return the component's type.
+     */
+    public Class<?> getComponentType(int index) {
+        return this.componentTypes[index];
+    }
+
+    @Override
+    public CompositeKey entryToObject(TupleInput input) {
+        Object[] components = new Object[this.componentTypes.length];
+        int size = 0;
+        while (size < components.length && input.available() > 0) {
+            components[size] = readComponent(this.componentTypes[size], input);
+            size++;
+        }
+        return CompositeKey.of(size == components.length
+                ? components : Arrays.copyOf(components, size));
+    }
+
+    @Override
+    public void objectToEntry(CompositeKey object, TupleOutput output) {
+        if (object.size() > this.componentTypes.length) {
+            throw new IllegalArgumentException("Key " + object 
+                    + " has more than " + this.componentTypes.length 
+                    + " components");
+        }
+        for (int i = 0, n = object.size(); i < n; i++) {
+            writeComponent(this.componentTypes[i], object.get(i), output);
+        }
+    }
+
+    private static Object readComponent(Class<?> type, TupleInput input) {
+        if (type == String.class) {
+            return input.readString();
+        } else if (type == Integer.class) {
+            return input.readInt();
+        } else if (type == Long.class) {
+            return input.readLong();
+        } else if (type == Double.class) {
+            return input.readSortedDouble();
+        } else if (type == Boolean.class) {
+            return input.readBoolean();
+        } else if (type == Date.class) {
+            return new Date(input.readLong());
+        } else {
+            long mostSigBits = input.readLong();
+            return new UUID(mostSigBits, input.readLong());
+        }
+    }
+
+    private static void writeComponent(Class<?> type, Object component,
+            TupleOutput output) {
+        if (!type.isInstance(component)) {
+            throw new IllegalArgumentException("Component " + component 
+                    + " is not a " + type.getName());
+        }
+        if (type == String.class) {
+            output.writeString((String) component);
+        } else if (type == Integer.class) {
+            output.writeInt((Integer) component);
+        } else if (type == Long.class) {
+            output.writeLong((Long) component);
+        } else if (type == Double.class) {
+            output.writeSortedDouble((Double) component);
+        } else if (type == Boolean.class) {
+            output.writeBoolean((Boolean) component);
+        } else if (type == Date.class) {
+            output.writeLong(((Date) component).getTime());
+        } else {
+            UUID uuid = (UUID) component;
+            output.writeLong(uuid.getMostSignificantBits());
+            output.writeLong(uuid.getLeastSignificantBits());
+        }
+    }
+}
@@ -0,0 +1,416 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.bind.tuple.TupleInput;
+import com.sleepycat.bind.tuple.TupleOutput;
+import com.sleepycat.je.DatabaseEntry;
+import java.io.IOError;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A binding that compresses the output of another binding. Data smaller
+ * than a threshold, and data that does not get smaller when compressed, is
+ * stored uncompressed with a one-byte header. Compressed data is stored with
+ * a header containing the algorithm, the uncompressed length and, if a
+ * dictionary was used, the dictionary's checksum.
+ *
+ * A dictionary is a sample of byte sequences that are common in the data,
+ * which improves compression of small values considerably. It may be 
+ * created with {@link #trainDictionary(java.lang.Iterable, int) }. Like 
+ * bindings, dictionaries are not stored in the database, so the same 
+ * dictionary must be provided every time the data store is opened. Reading
+ * a value that was compressed with a different dictionary fails with an
+ * {@link IOError}, like reading a corrupt value.
+ *
+ * This class is thread-safe if the wrapped binding is.
+ *
+ * @author Andrew Post
+ * @param <T> the type to bind.
+ */
+public final class CompressingBinding<T> implements EntryBinding<T> {
+
+    /**
+     * The default size in bytes below which values are not compressed.
+     */
+    public static final int DEFAULT_THRESHOLD = 128;
+
+    private static final int UNCOMPRESSED = 0;
+    private static final int DEFLATE = 1;
+    private static final int LZ = 2;
+    private static final int DICTIONARY_FLAG = 0x80;
+
+    private static final int TRAINING_GRAM_LENGTH = 8;
+    private static final int TRAINING_SEGMENT_LENGTH = 32;
+
+    private final EntryBinding<T> binding;
+    private final CompressionAlgorithm algorithm;
+    private final int threshold;
+    private final byte[] dictionary;
+    private final int dictionaryChecksum;
+
+    /**
+     * Creates a compressing binding without a dictionary that compresses 
+     * values of at least {@link #DEFAULT_THRESHOLD} bytes.
+     * 
+     * @param binding the binding whose output to compress. Cannot be
+     * <code>null</code>.
+     * @param algorithm the compression algorithm. Cannot be 
+     * <code>null</code>.
+     */
+    public CompressingBinding(EntryBinding<T> binding,
+            CompressionAlgorithm algorithm) {
+        this(binding, algorithm, DEFAULT_THRESHOLD, null);
+    }
+
+    /**
+     * Creates a compressing binding.
+     * 
+     * @param binding the binding whose output to compress. Cannot be
+     * <code>null</code>.
+     * @param algorithm the compression algorithm. Cannot be 
+     * <code>null</code>.
+     * @param threshold the size in bytes below which values are stored
+     * uncompressed.
+     * @param dictionary a dictionary, or <code>null</code>.
+     */
+    public CompressingBinding(EntryBinding<T> binding,
+            CompressionAlgorithm algorithm, int threshold, byte[] dictionary) {
+        if (binding == null) {
+            throw new IllegalArgumentException("binding cannot be null");
+        }
+        if (algorithm == null) {
+            throw new IllegalArgumentException("algorithm cannot be null");
+        }
+        this.binding = binding;
+        this.algorithm = algorithm;
+        this.threshold = threshold;
+        if (dictionary != null && dictionary.length > 0) {
+            this.dictionary = dictionary.clone();
+            Adler32 adler32 = new Adler32();
+            adler32.update(this.dictionary);
+            this.dictionaryChecksum = (int) adler32.getValue();
+        } else {
+            this.dictionary = null;
+            this.dictionaryChecksum = 0;
+        }
+    }
+
+    @Override
+    public T entryToObject(DatabaseEntry entry) {
+        byte[] data = entry.getData();
+        int offset = entry.getOffset();
+        int size = entry.getSize();
+        int header = data[offset] & 0xff;
+        int method = header & ~DICTIONARY_FLAG;
+        if (method == UNCOMPRESSED) {
+            return this.binding.entryToObject(
+                    new DatabaseEntry(data, offset + 1, size - 1));
+        }
+        byte[] uncompressed;
+        try {
+            uncompressed = decompress(data, offset, size, header);
+        } catch (IllegalStateException | IllegalArgumentException ex) {
+            throw new IOError(ex);
+        }
+        return this.binding.entryToObject(new DatabaseEntry(uncompressed));
+    }
+
+    private byte[] decompress(byte[] data, int offset, int size, 
+            int header) {
+        int method = header & ~DICTIONARY_FLAG;
+        TupleInput input = new TupleInput(data, offset + 1, size - 1);
+        int originalLength = input.readPackedInt();
+        byte[] dict = null;
+        if ((header & DICTIONARY_FLAG) != 0) {
+            int checksum = input.readInt();
+            if (this.dictionary == null 
+                    || checksum != this.dictionaryChecksum) {
+                throw new IllegalStateException(
+                        "Value was compressed with a different dictionary");
+            }
+            dict = this.dictionary;
+        }
+        int compressedOffset = input.getBufferOffset();
+        int compressedLength = offset + size - compressedOffset;
+        switch (method) {
+            case DEFLATE:
+                return inflate(data, compressedOffset, compressedLength, 
+                        originalLength, dict);
+            case LZ:
+                return LzCompressor.decompress(data, compressedOffset,
+                        compressedLength, originalLength, dict);
+            default:
+                throw new IllegalStateException(
+                        "Unknown compression method " + method);
+        }
+    }
+
+    @Override
+    public void objectToEntry(T object, DatabaseEntry entry) {
+        DatabaseEntry uncompressed = new DatabaseEntry();
+        this.binding.objectToEntry(object, uncompressed);
+        byte[] data = uncompressed.getData();
+        int offset = uncompressed.getOffset();
+        int size = uncompressed.getSize();
+        if (size >= this.threshold) {
+            byte[] compressed;
+            int method;
+            if (this.algorithm == CompressionAlgorithm.DEFLATE) {
+                compressed = deflate(data, offset, size);
+                method = DEFLATE;
+            } else {
+                compressed = LzCompressor.compress(data, offset, size,
+                        this.dictionary);
+                method = LZ;
+            }
+            TupleOutput output = new TupleOutput(
+                    new byte[compressed.length + 10]);
+            if (this.dictionary != null) {
+                output.writeFast(method | DICTIONARY_FLAG);
+                output.writePackedInt(size);
+                output.writeInt(this.dictionaryChecksum);
+            } else {
+                output.writeFast(method);
+                output.writePackedInt(size);
+            }
+            if (output.size() + compressed.length < size + 1) {
+                output.writeFast(compressed);
+                entry.setData(output.getBufferBytes(), 0, output.size());
+                return;
+            }
+        }
+        byte[] result = new byte[size + 1];
+        result[0] = UNCOMPRESSED;
+        System.arraycopy(data, offset, result, 1, size);
+        entry.setData(result);
+    }
+
+    /**
+     * Creates a dictionary from sample values. The dictionary is made of
+     * the byte sequences that occur in the most samples, with the most 
+     * common sequences at the end, where compressors find them most 
+     * cheaply. Samples should be representative of the values to be
+     * stored, and there should be at least dozens of them.
+     *
+     * @param samples the sample values, as they would be written by the
+     * binding whose output will be compressed. Cannot be <code>null</code>.
+     * @param maxSize the maximum size of the dictionary in bytes. Sizes
+     * above 32 KB are not useful for {@link CompressionAlgorithm#DEFLATE}.
+     * @return the dictionary. It is empty if no byte sequence occurred in
+     * more than one sample.
+     */
+    public static byte[] trainDictionary(Iterable<byte[]> samples,
+            int maxSize) {
+        if (samples == null) {
+            throw new IllegalArgumentException("samples cannot be null");
+        }
+        Map<Gram, int[]> sampleCounts = new HashMap<>();
+        for (byte[] sample : samples) {
+            Set<Gram> seen = new HashSet<>();
+            for (int i = 0; i + TRAINING_GRAM_LENGTH <= sample.length; i++) {
+                Gram gram = new Gram(sample, i);
+                if (seen.add(gram)) {
+                    int[] count = sampleCounts.get(gram);
+                    if (count == null) {
+                        sampleCounts.put(gram, new int[]{1});
+                    } else {
+                        count[0]++;
+                    }
+                }
+            }
+        }
+        List<Segment> segments = new ArrayList<>();
+        Set<Gram> used = new HashSet<>();
+        for (byte[] sample : samples) {
+            for (int start = 0; start < sample.length; 
+                    start += TRAINING_SEGMENT_LENGTH) {
+                int end = Math.min(start + TRAINING_SEGMENT_LENGTH, 
+                        sample.length);
+                long score = 0;
+                for (int i = start; i + TRAINING_GRAM_LENGTH <= end; i++) {
+                    int[] count = sampleCounts.get(new Gram(sample, i));
+                    if (count != null && count[0] > 1) {
+                        score += count[0] - 1;
+                    }
+                }
+                if (score > 0) {
+                    segments.add(new Segment(sample, start, end, score));
+                }
+            }
+        }
+        segments.sort((a, b) -> Long.compare(b.score, a.score));
+        List<Segment> selected = new ArrayList<>();
+        int size = 0;
+        for (Segment segment : segments) {
+            int length = segment.end - segment.start;
+            if (size + length > maxSize) {
+                continue;
+            }
+            if (length >= TRAINING_GRAM_LENGTH
+                    && !used.add(new Gram(segment.sample, segment.start))) {
+                continue;
+            }
+            selected.add(segment);
+            size += length;
+        }
+        byte[] result = new byte[size];
+        int pos = size;
+        for (Segment segment : selected) {
+            int length = segment.end - segment.start;
+            pos -= length;
+            System.arraycopy(segment.sample, segment.start, result, pos,
+                    length);
+        }
+        return result;
+    }
+
+    private byte[] deflate(byte[] data, int offset, int size) {
+        Deflater deflater = new Deflater();
+        try {
+            if (this.dictionary != null) {
+                deflater.setDictionary(this.dictionary);
+            }
+            deflater.setInput(data, offset, size);
+            deflater.finish();
+            byte[] buf = new byte[size + 64];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buf.length) {
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                }
+                length += deflater.deflate(buf, length, buf.length - length);
+            }
+            return Arrays.copyOf(buf, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private byte[] inflate(byte[] data, int offset, int length,
+            int originalLength, byte[] dict) {
+        Inflater inflater = new Inflater();
+        inflater.setInput(data, offset, length);
+        byte[] result = new byte[originalLength];
+        int pos = 0;
+        try {
+            while (pos < originalLength) {
+                int n = inflater.inflate(result, pos, originalLength - pos);
+                if (n == 0) {
+                    if (inflater.needsDictionary()) {
+                        if (dict == null) {
+                            throw new IllegalStateException(
+                                    "Compressed value needs a dictionary");
+                        }
+                        try {
+                            inflater.setDictionary(dict);
+                        } catch (IllegalArgumentException ex) {
+                            throw new IllegalStateException("Value was "
+                                    + "compressed with a different dictionary",
+                                    ex);
+                        }
+                    } else if (inflater.finished() || inflater.needsInput()) {
+                        throw new IllegalStateException(
+                                "Compressed value is truncated");
+                    } else {
+                        throw new IllegalStateException(
+                                "Compressed value is corrupt");
+                    }
+                }
+                pos += n;
+            }
+        } catch (DataFormatException ex) {
+            throw new IllegalStateException("Compressed value is corrupt", ex);
+        } finally {
+            inflater.end();
+        }
+        return result;
+    }
+
+    /**
+     * A fixed-length byte sequence used while training a dictionary.
+     */
+    private static final class Gram {
+
+        private final byte[] bytes;
+        private final int offset;
+        private final int hashCode;
+
+        Gram(byte[] bytes, int offset) {
+            this.bytes = bytes;
+            this.offset = offset;
+            int h = 1;
+            for (int i = 0; i < TRAINING_GRAM_LENGTH; i++) {
+                h = 31 * h + bytes[offset + i];
+            }
+            this.hashCode = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Gram)) {
+                return false;
+            }
+            Gram other = (Gram) obj;
+            for (int i = 0; i < TRAINING_GRAM_LENGTH; i++) {
+                if (this.bytes[this.offset + i] 
+                        != other.bytes[other.offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A candidate section of a sample for inclusion in a dictionary.
+     */
+    private static final class Segment {
+
+        private final byte[] sample;
+        private final int start;
+        private final int end;
+        private final long score;
+
+        Segment(byte[] sample, int start, int end, long score) {
+            this.sample = sample;
+            this.start = start;
+            this.end = end;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * The compression algorithms supported by {@link CompressingBinding}.
+ *
+ * @author Andrew Post
+ */
+public enum CompressionAlgorithm {
+
+    /**
+     * The DEFLATE algorithm, as implemented by {@link java.util.zip.Deflater}.
+     * It has the best compression ratio of the supported algorithms.
+     */
+    DEFLATE,
+    
+    /**
+     * A byte-oriented LZ77 algorithm in the style of LZ4, implemented in
+     * Java. It compresses less than {@link #DEFLATE} but is several times
+     * faster, particularly when decompressing.
+     */
+    LZ
+}
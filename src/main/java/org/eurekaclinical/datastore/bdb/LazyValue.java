@@ -0,0 +1,81 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.je.DatabaseEntry;
+
+/**
+ * A value read from a Berkeley DB data store that is not converted to an 
+ * object until {@link #get() } is first called. Code that only checks 
+ * whether a value exists, or that passes its bytes along to somewhere else,
+ * never pays for converting it.
+ *
+ * This class is thread-safe.
+ *
+ * @author Andrew Post
+ * @param <V> the value type.
+ */
+public final class LazyValue<V> {
+
+    private final byte[] bytes;
+    private final EntryBinding<V> binding;
+    private V value;
+    private boolean converted;
+
+    /**
+     * Creates a lazy value.
+     * 
+     * @param bytes the value's bytes as stored in the database. The array is
+     * not copied.
+     * @param binding the binding for converting the bytes to an object.
+     */
+    LazyValue(byte[] bytes, EntryBinding<V> binding) {
+        this.bytes = bytes;
+        this.binding = binding;
+    }
+
+    /**
+     * Returns the value, converting it from bytes the first time this method
+     * is called.
+     *
+     * @return the value.
+     */
+    public synchronized V get() {
+        if (!this.converted) {
+            this.value = this.binding.entryToObject(
+                    new DatabaseEntry(this.bytes));
+            this.converted = true;
+        }
+        return this.value;
+    }
+
+    /**
+     * Returns the value's bytes exactly as they are stored in the database,
+     * that is, the output of the data store's value binding. The returned 
+     * array is not a copy and must not be modified.
+     *
+     * @return the value's bytes.
+     */
+    public byte[] getBytes() {
+        return this.bytes;
+    }
+}
@@ -0,0 +1,208 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.sleepycat.util.FastOutputStream;
+import java.util.Arrays;
+
+/**
+ * A fast LZ77 compressor in the style of LZ4. Compressed data is a sequence
+ * of tokens. Each token is a byte whose high four bits are a literal count 
+ * and whose low four bits are a match length minus four, with 15 in either
+ * meaning that more length bytes follow, each adding up to 255. The token is
+ * followed by the literal bytes and, except for the last token, a two-byte
+ * little-endian match offset. Matches may refer back into an optional 
+ * dictionary that precedes the data.
+ *
+ * @author Andrew Post
+ */
+final class LzCompressor {
+
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 65535;
+    private static final int HASH_BITS = 14;
+
+    private LzCompressor() {
+    }
+
+    /**
+     * Compresses data.
+     *
+     * @param data the data to compress.
+     * @param offset the offset of the data in the array.
+     * @param length the length of the data.
+     * @param dictionary a dictionary, or <code>null</code>.
+     * @return the compressed data.
+     */
+    static byte[] compress(byte[] data, int offset, int length,
+            byte[] dictionary) {
+        int dictLength = dictionary != null 
+                ? Math.min(dictionary.length, MAX_OFFSET) : 0;
+        byte[] src = new byte[dictLength + length];
+        if (dictLength > 0) {
+            System.arraycopy(dictionary, dictionary.length - dictLength,
+                    src, 0, dictLength);
+        }
+        System.arraycopy(data, offset, src, dictLength, length);
+        int end = src.length;
+        int[] table = new int[1 << HASH_BITS];
+        Arrays.fill(table, -1);
+        for (int i = 0; i + MIN_MATCH <= dictLength; i++) {
+            table[hash(src, i)] = i;
+        }
+        FastOutputStream out = new FastOutputStream(length / 2 + 16);
+        int anchor = dictLength;
+        int i = dictLength;
+        while (i + MIN_MATCH <= end) {
+            int h = hash(src, i);
+            int candidate = table[h];
+            table[h] = i;
+            if (candidate >= 0 && i - candidate <= MAX_OFFSET
+                    && src[candidate] == src[i]
+                    && src[candidate + 1] == src[i + 1]
+                    && src[candidate + 2] == src[i + 2]
+                    && src[candidate + 3] == src[i + 3]) {
+                int matchLength = MIN_MATCH;
+                while (i + matchLength < end
+                        && src[candidate + matchLength] == src[i + matchLength]) {
+                    matchLength++;
+                }
+                writeSequence(out, src, anchor, i - anchor, i - candidate,
+                        matchLength);
+                i += matchLength;
+                anchor = i;
+                if (i - 2 >= dictLength && i - 2 + MIN_MATCH <= end) {
+                    table[hash(src, i - 2)] = i - 2;
+                }
+            } else {
+                i++;
+            }
+        }
+        writeSequence(out, src, anchor, end - anchor, 0, 0);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decompresses data.
+     *
+     * @param data the compressed data.
+     * @param offset the offset of the compressed data in the array.
+     * @param length the length of the compressed data.
+     * @param originalLength the length of the data before compression.
+     * @param dictionary the dictionary that was used to compress the data, or
+     * <code>null</code>.
+     * @return the decompressed data.
+     *
+     * @throws IllegalArgumentException if the compressed data is corrupt.
+     */
+    static byte[] decompress(byte[] data, int offset, int length,
+            int originalLength, byte[] dictionary) {
+        int dictLength = dictionary != null 
+                ? Math.min(dictionary.length, MAX_OFFSET) : 0;
+        byte[] dst = new byte[dictLength + originalLength];
+        if (dictLength > 0) {
+            System.arraycopy(dictionary, dictionary.length - dictLength,
+                    dst, 0, dictLength);
+        }
+        int op = dictLength;
+        int ip = offset;
+        int end = offset + length;
+        try {
+            while (ip < end) {
+                int token = data[ip++] & 0xff;
+                int literalLength = token >>> 4;
+                if (literalLength == 15) {
+                    int b;
+                    do {
+                        b = data[ip++] & 0xff;
+                        literalLength += b;
+                    } while (b == 255);
+                }
+                System.arraycopy(data, ip, dst, op, literalLength);
+                ip += literalLength;
+                op += literalLength;
+                if (ip >= end) {
+                    break;
+                }
+                int matchOffset = (data[ip] & 0xff) 
+                        | ((data[ip + 1] & 0xff) << 8);
+                ip += 2;
+                int matchLength = token & 0x0f;
+                if (matchLength == 15) {
+                    int b;
+                    do {
+                        b = data[ip++] & 0xff;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                int from = op - matchOffset;
+                if (matchOffset == 0 || from < 0) {
+                    throw new IllegalArgumentException("Corrupt LZ data");
+                }
+                for (int j = 0; j < matchLength; j++) {
+                    dst[op++] = dst[from + j];
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            throw new IllegalArgumentException("Corrupt LZ data", ex);
+        }
+        if (op != dst.length) {
+            throw new IllegalArgumentException("Corrupt LZ data");
+        }
+        return dictLength > 0 ? Arrays.copyOfRange(dst, dictLength, dst.length)
+                : dst;
+    }
+
+    private static void writeSequence(FastOutputStream out, byte[] src,
+            int literalStart, int literalLength, int matchOffset,
+            int matchLength) {
+        int literalNibble = Math.min(literalLength, 15);
+        int matchNibble = matchLength > 0 
+                ? Math.min(matchLength - MIN_MATCH, 15) : 0;
+        out.writeFast((literalNibble << 4) | matchNibble);
+        if (literalNibble == 15) {
+            writeLength(out, literalLength - 15);
+        }
+        out.writeFast(src, literalStart, literalLength);
+        if (matchLength > 0) {
+            out.writeFast(matchOffset & 0xff);
+            out.writeFast((matchOffset >>> 8) & 0xff);
+            if (matchNibble == 15) {
+                writeLength(out, matchLength - MIN_MATCH - 15);
+            }
+        }
+    }
+
+    private static void writeLength(FastOutputStream out, int length) {
+        while (length >= 255) {
+            out.writeFast(255);
+            length -= 255;
+        }
+        out.writeFast(length);
+    }
+
+    private static int hash(byte[] src, int i) {
+        int v = (src[i] & 0xff) | ((src[i + 1] & 0xff) << 8)
+                | ((src[i + 2] & 0xff) << 16) | ((src[i + 3] & 0xff) << 24);
+        return (v * -1640531535) >>> (32 - HASH_BITS);
+    }
+}
@@ -0,0 +1,61 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class for which a tuple binding should be generated at compile
+ * time. The annotation processor, 
+ * {@link org.eurekaclinical.datastore.bdb.processor.TupleBindingProcessor},
+ * is not registered as a service, so it does not run in every build that 
+ * has this library on its classpath. It must be named explicitly, with 
+ * <code>javac -processor 
+ * org.eurekaclinical.datastore.bdb.processor.TupleBindingProcessor</code>
+ * or the maven-compiler-plugin's <code>annotationProcessors</code> and 
+ * <code>annotationProcessorPaths</code> settings. It generates a class 
+ * named <code><i>Name</i>TupleBinding</code> in the same package as each
+ * annotated class <code><i>Name</i></code> (<code><i>Outer</i>_<i>Name</i>TupleBinding</code> for a nested class).
+ * The generated binding reads and writes the class' fields directly, without
+ * reflection or Java serialization. {@link BdbBindings#forClass(java.lang.Class) }
+ * and {@link BdbStoreFactory#getInstance(java.lang.String, java.lang.Class, java.lang.Class) }
+ * find generated bindings automatically.
+ *
+ * An annotated class must be a top-level or static nested class with a 
+ * non-private no-argument constructor. Its non-static, non-transient fields
+ * are written in declaration order, and must be non-private and of one of
+ * the following types: a primitive type or its wrapper, {@link String},
+ * {@link java.util.Date}, an enum, <code>byte[]</code>, or another class
+ * with this annotation. Its superclass may not have fields that need to be
+ * written. Adding, removing or reordering fields changes the stored format,
+ * so existing databases must be rebuilt when the class changes.
+ *
+ * @author Andrew Post
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface TupleBound {
+}
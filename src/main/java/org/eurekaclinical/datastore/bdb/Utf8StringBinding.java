@@ -0,0 +1,57 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.je.DatabaseEntry;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A binding that stores strings as their UTF-8 bytes with no length prefix
+ * or terminator. Because UTF-8 byte order is the same as Unicode code point
+ * order, keys stored with this binding are ordered in the database the same
+ * way as {@link String#compareTo(java.lang.String) } orders them, except 
+ * that strings containing supplementary characters sort after strings 
+ * containing characters in the range U+E000 to U+FFFF. Strings that share a
+ * prefix are stored next to each other, so a prefix query is a range query.
+ * Unpaired surrogate characters cannot be represented in UTF-8 and are
+ * replaced when stored.
+ *
+ * Instances of this class are thread-safe.
+ *
+ * @author Andrew Post
+ */
+public final class Utf8StringBinding implements EntryBinding<String> {
+
+    @Override
+    public String entryToObject(DatabaseEntry entry) {
+        return new String(entry.getData(), entry.getOffset(), entry.getSize(),
+                StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void objectToEntry(String object, DatabaseEntry entry) {
+        if (object == null) {
+            throw new IllegalArgumentException("object cannot be null");
+        }
+        entry.setData(object.getBytes(StandardCharsets.UTF_8));
+    }
+}
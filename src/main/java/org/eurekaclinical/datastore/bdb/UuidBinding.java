@@ -0,0 +1,57 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.sleepycat.bind.tuple.TupleBinding;
+import com.sleepycat.bind.tuple.TupleInput;
+import com.sleepycat.bind.tuple.TupleOutput;
+import java.util.UUID;
+
+/**
+ * A binding that stores {@link UUID}s in 16 bytes: the most significant and
+ * least significant halves, each in big-endian order with the sign bit
+ * flipped. Keys stored with this binding are ordered in the database the same
+ * way as {@link UUID#compareTo(java.util.UUID) } orders them.
+ *
+ * Instances of this class are thread-safe.
+ *
+ * @author Andrew Post
+ */
+public final class UuidBinding extends TupleBinding<UUID> {
+
+    @Override
+    public UUID entryToObject(TupleInput input) {
+        long mostSigBits = input.readLong();
+        long leastSigBits = input.readLong();
+        return new UUID(mostSigBits, leastSigBits);
+    }
+
+    @Override
+    public void objectToEntry(UUID object, TupleOutput output) {
+        output.writeLong(object.getMostSignificantBits());
+        output.writeLong(object.getLeastSignificantBits());
+    }
+
+    @Override
+    protected TupleOutput getTupleOutput(UUID object) {
+        return new TupleOutput(new byte[16]);
+    }
+}
@@ -0,0 +1,394 @@
+package org.eurekaclinical.datastore.bdb.processor;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import org.eurekaclinical.datastore.bdb.TupleBound;
+
+/**
+ * Annotation processor that generates a tuple binding for each class 
+ * annotated with {@link TupleBound}. It is not registered as a service, 
+ * so it only runs when it is named with the compiler's 
+ * <code>-processor</code> option or the build tool's equivalent.
+ *
+ * @author Andrew Post
+ */
+@SupportedAnnotationTypes("org.eurekaclinical.datastore.bdb.TupleBound")
+public class TupleBindingProcessor extends AbstractProcessor {
+
+    private static final String BINDING_SUFFIX = "TupleBinding";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations,
+            RoundEnvironment roundEnv) {
+        for (Element element
+                : roundEnv.getElementsAnnotatedWith(TupleBound.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@TupleBound may only be applied to classes");
+                continue;
+            }
+            TypeElement typeElement = (TypeElement) element;
+            if (validateClass(typeElement)) {
+                List<FieldWriter> fields = collectFields(typeElement);
+                if (fields != null) {
+                    try {
+                        writeBinding(typeElement, fields);
+                    } catch (IOException ex) {
+                        error(typeElement, "Could not write tuple binding: "
+                                + ex.getMessage());
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the simple name of the binding class that is generated for a
+     * class. Nested class names are joined with underscores.
+     *
+     * @param typeElement the annotated class.
+     * @return the binding class' simple name.
+     */
+    private String bindingSimpleName(TypeElement typeElement) {
+        String binaryName = processingEnv.getElementUtils()
+                .getBinaryName(typeElement).toString();
+        String packageName = packageName(typeElement);
+        String localName = packageName.isEmpty() ? binaryName
+                : binaryName.substring(packageName.length() + 1);
+        return localName.replace('$', '_') + BINDING_SUFFIX;
+    }
+
+    private String packageName(TypeElement typeElement) {
+        PackageElement pkg
+                = processingEnv.getElementUtils().getPackageOf(typeElement);
+        return pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+    }
+
+    private boolean validateClass(TypeElement typeElement) {
+        boolean valid = true;
+        if (typeElement.getModifiers().contains(Modifier.ABSTRACT)) {
+            error(typeElement, "@TupleBound classes may not be abstract");
+            valid = false;
+        }
+        if (typeElement.getNestingKind() != NestingKind.TOP_LEVEL
+                && (typeElement.getNestingKind() != NestingKind.MEMBER
+                || !typeElement.getModifiers().contains(Modifier.STATIC))) {
+            error(typeElement, 
+                    "@TupleBound classes must be top-level or static nested classes");
+            valid = false;
+        }
+        for (Element enclosing = typeElement; 
+                enclosing instanceof TypeElement;
+                enclosing = enclosing.getEnclosingElement()) {
+            if (enclosing.getModifiers().contains(Modifier.PRIVATE)) {
+                error(typeElement, "@TupleBound classes may not be private");
+                valid = false;
+                break;
+            }
+        }
+        boolean hasNoArgConstructor = false;
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(
+                typeElement.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty()
+                    && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                hasNoArgConstructor = true;
+            }
+        }
+        if (!hasNoArgConstructor) {
+            error(typeElement,
+                    "@TupleBound classes need a non-private no-argument constructor");
+            valid = false;
+        }
+        TypeMirror superclass = typeElement.getSuperclass();
+        while (superclass.getKind() == TypeKind.DECLARED) {
+            TypeElement superElement
+                    = (TypeElement) ((DeclaredType) superclass).asElement();
+            for (VariableElement field : ElementFilter.fieldsIn(
+                    superElement.getEnclosedElements())) {
+                if (isPersistent(field)) {
+                    error(typeElement, "Superclass field " + superElement
+                            + "." + field + " would not be written");
+                    valid = false;
+                }
+            }
+            superclass = superElement.getSuperclass();
+        }
+        return valid;
+    }
+
+    private static boolean isPersistent(VariableElement field) {
+        Set<Modifier> modifiers = field.getModifiers();
+        return !modifiers.contains(Modifier.STATIC)
+                && !modifiers.contains(Modifier.TRANSIENT);
+    }
+
+    private List<FieldWriter> collectFields(TypeElement typeElement) {
+        List<FieldWriter> result = new ArrayList<>();
+        boolean valid = true;
+        for (VariableElement field : ElementFilter.fieldsIn(
+                typeElement.getEnclosedElements())) {
+            if (!isPersistent(field)) {
+                continue;
+            }
+            if (field.getModifiers().contains(Modifier.PRIVATE)) {
+                error(field, "@TupleBound fields may not be private");
+                valid = false;
+            } else if (field.getModifiers().contains(Modifier.FINAL)) {
+                error(field, "@TupleBound fields may not be final");
+                valid = false;
+            } else {
+                FieldWriter writer = fieldWriter(field);
+                if (writer == null) {
+                    error(field, "Unsupported field type " + field.asType());
+                    valid = false;
+                } else {
+                    result.add(writer);
+                }
+            }
+        }
+        return valid ? result : null;
+    }
+
+    private FieldWriter fieldWriter(VariableElement field) {
+        String name = "object." + field.getSimpleName();
+        TypeMirror type = field.asType();
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return primitive(name, "Boolean");
+            case BYTE:
+                return primitive(name, "Byte", "(byte) ");
+            case SHORT:
+                return primitive(name, "Short", "(short) ");
+            case CHAR:
+                return primitive(name, "Char", "");
+            case INT:
+                return primitive(name, "PackedInt");
+            case LONG:
+                return primitive(name, "PackedLong");
+            case FLOAT:
+                return primitive(name, "Float");
+            case DOUBLE:
+                return primitive(name, "Double");
+            case ARRAY:
+                if (((ArrayType) type).getComponentType().getKind()
+                        == TypeKind.BYTE) {
+                    return new FieldWriter(
+                            "if (" + name + " == null) {\n"
+                            + "            output.writePackedInt(-1);\n"
+                            + "        } else {\n"
+                            + "            output.writePackedInt(" + name + ".length);\n"
+                            + "            output.writeFast(" + name + ");\n"
+                            + "        }",
+                            "{\n"
+                            + "            int length = input.readPackedInt();\n"
+                            + "            if (length >= 0) {\n"
+                            + "                " + name + " = new byte[length];\n"
+                            + "                input.readFast(" + name + ");\n"
+                            + "            }\n"
+                            + "        }");
+                }
+                return null;
+            case DECLARED:
+                return declared(name, (DeclaredType) type);
+            default:
+                return null;
+        }
+    }
+
+    private static FieldWriter primitive(String name, String method) {
+        return primitive(name, method, "");
+    }
+
+    private static FieldWriter primitive(String name, String method,
+            String cast) {
+        return new FieldWriter(
+                "output.write" + method + "(" + name + ");",
+                name + " = " + cast + "input.read" + method + "();");
+    }
+
+    private FieldWriter declared(String name, DeclaredType type) {
+        TypeElement element = (TypeElement) type.asElement();
+        String typeName = element.getQualifiedName().toString();
+        switch (typeName) {
+            case "java.lang.String":
+                return new FieldWriter("output.writeString(" + name + ");",
+                        name + " = input.readString();");
+            case "java.lang.Boolean":
+                return nullable(name, "output.writeBoolean(" + name + ");",
+                        "input.readBoolean()");
+            case "java.lang.Byte":
+                return nullable(name, "output.writeByte(" + name + ");",
+                        "(byte) input.readByte()");
+            case "java.lang.Short":
+                return nullable(name, "output.writeShort(" + name + ");",
+                        "(short) input.readShort()");
+            case "java.lang.Character":
+                return nullable(name, "output.writeChar(" + name + ");",
+                        "input.readChar()");
+            case "java.lang.Integer":
+                return nullable(name, "output.writePackedInt(" + name + ");",
+                        "input.readPackedInt()");
+            case "java.lang.Long":
+                return nullable(name, "output.writePackedLong(" + name + ");",
+                        "input.readPackedLong()");
+            case "java.lang.Float":
+                return nullable(name, "output.writeFloat(" + name + ");",
+                        "input.readFloat()");
+            case "java.lang.Double":
+                return nullable(name, "output.writeDouble(" + name + ");",
+                        "input.readDouble()");
+            case "java.util.Date":
+                return nullable(name, 
+                        "output.writePackedLong(" + name + ".getTime());",
+                        "new java.util.Date(input.readPackedLong())");
+            default:
+                if (element.getKind() == ElementKind.ENUM) {
+                    return nullable(name, 
+                            "output.writeString(" + name + ".name());",
+                            typeName + ".valueOf(input.readString())");
+                } else if (element.getAnnotation(TupleBound.class) != null) {
+                    String binding = packageName(element);
+                    binding = (binding.isEmpty() ? "" : binding + ".")
+                            + bindingSimpleName(element);
+                    return nullable(name, 
+                            binding + ".writeTuple(" + name + ", output);",
+                            binding + ".readTuple(input)");
+                } else {
+                    return null;
+                }
+        }
+    }
+
+    private static FieldWriter nullable(String name, String write, 
+            String read) {
+        return new FieldWriter(
+                "if (" + name + " == null) {\n"
+                + "            output.writeBoolean(false);\n"
+                + "        } else {\n"
+                + "            output.writeBoolean(true);\n"
+                + "            " + write + "\n"
+                + "        }",
+                name + " = input.readBoolean() ? " + read + " : null;");
+    }
+
+    private void writeBinding(TypeElement typeElement,
+            List<FieldWriter> fields) throws IOException {
+        String packageName = packageName(typeElement);
+        String simpleName = bindingSimpleName(typeElement);
+        String typeName = typeElement.getQualifiedName().toString();
+        String qualifiedName = packageName.isEmpty() ? simpleName
+                : packageName + "." + simpleName;
+        try (PrintWriter out = new PrintWriter(processingEnv.getFiler()
+                .createSourceFile(qualifiedName, typeElement).openWriter())) {
+            if (!packageName.isEmpty()) {
+                out.println("package " + packageName + ";");
+                out.println();
+            }
+            out.println("import com.sleepycat.bind.tuple.TupleBinding;");
+            out.println("import com.sleepycat.bind.tuple.TupleInput;");
+            out.println("import com.sleepycat.bind.tuple.TupleOutput;");
+            out.println();
+            out.println("/**");
+            out.println(" * Tuple binding for {@link " + typeName + "}.");
+            out.println(" * Generated by " + getClass().getName() + ".");
+            out.println(" */");
+            out.println("public final class " + simpleName
+                    + " extends TupleBinding<" + typeName + "> {");
+            out.println();
+            out.println("    @Override");
+            out.println("    public " + typeName 
+                    + " entryToObject(TupleInput input) {");
+            out.println("        return readTuple(input);");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public void objectToEntry(" + typeName
+                    + " object, TupleOutput output) {");
+            out.println("        writeTuple(object, output);");
+            out.println("    }");
+            out.println();
+            out.println("    public static " + typeName
+                    + " readTuple(TupleInput input) {");
+            out.println("        " + typeName + " object = new " + typeName 
+                    + "();");
+            for (FieldWriter field : fields) {
+                out.println("        " + field.read);
+            }
+            out.println("        return object;");
+            out.println("    }");
+            out.println();
+            out.println("    public static void writeTuple(" + typeName
+                    + " object, TupleOutput output) {");
+            for (FieldWriter field : fields) {
+                out.println("        " + field.write);
+            }
+            out.println("    }");
+            out.println("}");
+        }
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                message, element);
+    }
+
+    /**
+     * The generated statements that write and read one field.
+     */
+    private static final class FieldWriter {
+
+        private final String write;
+        private final String read;
+
+        FieldWriter(String write, String read) {
+            this.write = write;
+            this.read = read;
+        }
+    }
+}
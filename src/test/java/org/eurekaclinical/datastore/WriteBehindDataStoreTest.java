@@ -0,0 +1,173 @@
+package org.eurekaclinical.datastore;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class WriteBehindDataStoreTest {
+
+    @Test
+    public void testCoalescing() {
+        CountingStore store = new CountingStore();
+        WriteBehindDataStore<String, Integer> writeBehind
+                = new WriteBehindDataStore<>(store, 100, 1, TimeUnit.HOURS);
+        for (int i = 0; i < 1000; i++) {
+            writeBehind.put("counter", i);
+        }
+        writeBehind.put("status", 1);
+        writeBehind.remove("status");
+        Assert.assertEquals(Integer.valueOf(999), writeBehind.get("counter"));
+        Assert.assertFalse(writeBehind.containsKey("status"));
+        Assert.assertTrue(store.isEmpty());
+        writeBehind.flush();
+        Assert.assertEquals(2, store.writtenOperations);
+        Assert.assertEquals(Collections.singletonMap("counter", 999), store);
+        writeBehind.close();
+        Assert.assertTrue(store.isClosed());
+    }
+
+    @Test
+    public void testFullQueueIsDrained() {
+        CountingStore store = new CountingStore();
+        try (WriteBehindDataStore<String, Integer> writeBehind
+                = new WriteBehindDataStore<>(store, 10, 1, TimeUnit.HOURS)) {
+            for (int i = 0; i < 100; i++) {
+                writeBehind.put("k" + i, i);
+            }
+            Assert.assertEquals(100, writeBehind.size());
+        }
+        Assert.assertEquals(100, store.size());
+    }
+
+    @Test
+    public void testConcurrentPutsReturnDistinctOldValues() 
+            throws InterruptedException {
+        CountingStore store = new CountingStore();
+        List<Integer> oldValues = Collections.synchronizedList(
+                new ArrayList<>());
+        try (WriteBehindDataStore<String, Integer> writeBehind
+                = new WriteBehindDataStore<>(store, 10, 0, TimeUnit.SECONDS)) {
+            Thread[] threads = new Thread[4];
+            for (int i = 0; i < threads.length; i++) {
+                int first = i * 1000;
+                threads[i] = new Thread(() -> {
+                    for (int j = first; j < first + 1000; j++) {
+                        oldValues.add(writeBehind.put("key", j));
+                    }
+                });
+                threads[i].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            oldValues.add(writeBehind.remove("key"));
+        }
+        Set<Integer> expected = new HashSet<>();
+        for (int i = 0; i < 4000; i++) {
+            expected.add(i);
+        }
+        expected.add(null);
+        Assert.assertEquals(4001, oldValues.size());
+        Assert.assertEquals(expected, new HashSet<>(oldValues));
+        Assert.assertFalse(store.containsKey("key"));
+    }
+
+    @Test(timeout = 60000)
+    public void testFlushWithSteadyProducer() throws InterruptedException {
+        CountingStore store = new CountingStore(1);
+        AtomicBoolean stop = new AtomicBoolean();
+        try (WriteBehindDataStore<String, Integer> writeBehind
+                = new WriteBehindDataStore<>(store, 100, 0, TimeUnit.SECONDS)) {
+            Thread producer = new Thread(() -> {
+                for (int i = 0; !stop.get(); i++) {
+                    writeBehind.put("k" + (i % 1000), i);
+                }
+            });
+            producer.start();
+            try {
+                for (int i = 0; i < 100; i++) {
+                    writeBehind.put("marker", i);
+                    writeBehind.flush();
+                    Assert.assertEquals(Integer.valueOf(i), 
+                            store.get("marker"));
+                }
+            } finally {
+                stop.set(true);
+                producer.join();
+            }
+        }
+    }
+
+    private static final class CountingStore 
+            extends ConcurrentHashMap<String, Integer>
+            implements DataStore<String, Integer> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long writeMillis;
+        private volatile int writtenOperations;
+        private volatile boolean closed;
+
+        CountingStore() {
+            this(0);
+        }
+
+        CountingStore(long writeMillis) {
+            this.writeMillis = writeMillis;
+        }
+
+        @Override
+        public void write(WriteBatch<String, Integer> batch) {
+            if (this.writeMillis > 0) {
+                try {
+                    Thread.sleep(this.writeMillis);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            this.writtenOperations += batch.size();
+            DataStore.super.write(batch);
+        }
+
+        @Override
+        public void close() {
+            this.closed = true;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return this.closed;
+        }
+    }
+}
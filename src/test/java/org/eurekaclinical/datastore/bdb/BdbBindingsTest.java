@@ -0,0 +1,94 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.je.DatabaseEntry;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class BdbBindingsTest {
+
+    @Test
+    public void testUtf8StringBindingPreservesOrder() {
+        assertOrderPreserved(BdbBindings.utf8StringBinding(),
+                Arrays.asList("", "a", "ab", "abc", "b", "é", "中"));
+    }
+
+    @Test
+    public void testIntegerBindingPreservesOrder() {
+        assertOrderPreserved(BdbBindings.integerBinding(),
+                Arrays.asList(Integer.MIN_VALUE, -256, -1, 0, 1, 255, 256,
+                        Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testUuidBindingPreservesOrder() {
+        assertOrderPreserved(BdbBindings.uuidBinding(),
+                Arrays.asList(new UUID(Long.MIN_VALUE, 0L),
+                        new UUID(-1L, Long.MAX_VALUE),
+                        new UUID(0L, Long.MIN_VALUE),
+                        new UUID(0L, 0L),
+                        new UUID(0L, 1L),
+                        new UUID(Long.MAX_VALUE, -1L)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoPrimitiveBinding() {
+        BdbBindings.primitiveBinding(Object.class);
+    }
+
+    private static <T> void assertOrderPreserved(EntryBinding<T> binding,
+            List<T> sorted) {
+        byte[] previous = null;
+        for (T value : sorted) {
+            DatabaseEntry entry = new DatabaseEntry();
+            binding.objectToEntry(value, entry);
+            Assert.assertEquals(value, binding.entryToObject(entry));
+            byte[] current = Arrays.copyOfRange(entry.getData(),
+                    entry.getOffset(), entry.getOffset() + entry.getSize());
+            if (previous != null) {
+                Assert.assertTrue("out of order at " + value,
+                        compareUnsigned(previous, current) < 0);
+            }
+            previous = current;
+        }
+    }
+
+    private static int compareUnsigned(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return a.length - b.length;
+    }
+}
@@ -0,0 +1,164 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.arp.javautil.io.FileUtil;
+import org.eurekaclinical.datastore.DataStore;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class BdbBulkLoaderTest {
+
+    private BdbPersistentStoreFactory<String, String> factory;
+
+    @Before
+    public void setUp() throws IOException {
+        String envName = BdbUtil.uniqueEnvironment("bdb-bulk-load-test", 
+                null, FileUtil.getTempDirectory());
+        this.factory = new BdbPersistentStoreFactory<>(envName);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.factory.closeAndRemoveAllDatabaseHandles();
+    }
+
+    @Test
+    public void testLoadSpillsAndMergesRuns() throws IOException {
+        DataStore<String, String> store = this.factory.getInstance(
+                "BdbBulkLoaderTest", new BdbStoreConfig<String, String>()
+                        .setTransactional(true)
+                        .setBatchCommitSize(100)
+                        .setEncodingThreads(3));
+        List<Map.Entry<String, String>> entries = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            entries.add(entry("key" + i, "old" + i));
+        }
+        Collections.shuffle(entries, new Random(7));
+        for (int i = 0; i < 1000; i += 10) {
+            entries.add(entry("key" + i, "new" + i));
+        }
+        long count = new BdbBulkLoader<>(store)
+                .setRunMemory(2048)
+                .load(entries.stream());
+        Assert.assertEquals(1000, count);
+        Assert.assertEquals(1000, store.size());
+        Assert.assertEquals("new10", store.get("key10"));
+        Assert.assertEquals("old11", store.get("key11"));
+        store.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testLoadRejectsNonEmptyStore() throws IOException {
+        DataStore<String, String> store = 
+                this.factory.getInstance("BdbBulkLoaderNonEmptyTest");
+        try {
+            store.put("a", "b");
+            new BdbBulkLoader<>(store).load(
+                    Collections.singletonList(entry("c", "d")).iterator());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testLoadDeduplicatingStore() throws IOException {
+        BdbDedupMap<String, String> store = 
+                (BdbDedupMap<String, String>) this.factory.getInstance(
+                        "BdbBulkLoaderDedupTest", 
+                        new BdbStoreConfig<String, String>()
+                                .setKeyBinding(BdbBindings.stringBinding())
+                                .setValueBinding(BdbBindings.stringBinding())
+                                .setDeduplicating(true));
+        new BdbBulkLoader<>(store).setRunMemory(1).load(Arrays.asList(
+                entry("b", "doc1"), entry("a", "doc1"), 
+                entry("c", "doc2")).iterator());
+        Assert.assertEquals(2, store.distinctValueCount());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("doc1", "doc2")),
+                new HashSet<>(store.values()));
+        store.remove("a");
+        store.remove("b");
+        Assert.assertEquals(1, store.distinctValueCount());
+        store.close();
+    }
+
+    @Test
+    public void testFailedLoadDeletesRunFiles() throws IOException {
+        File tempDirectory = new File(FileUtil.getTempDirectory(), 
+                "bdb-bulk-load-runs-" + System.nanoTime());
+        Assert.assertTrue(tempDirectory.mkdir());
+        DataStore<String, String> store = 
+                this.factory.getInstance("BdbBulkLoaderFailureTest");
+        IllegalStateException failure = new IllegalStateException("source");
+        Iterator<Map.Entry<String, String>> entries 
+                = new Iterator<Map.Entry<String, String>>() {
+            private int i;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Map.Entry<String, String> next() {
+                if (this.i == 1000) {
+                    throw failure;
+                }
+                this.i++;
+                return entry("key" + this.i, "value" + this.i);
+            }
+        };
+        try {
+            new BdbBulkLoader<>(store).setRunMemory(1024)
+                    .setTempDirectory(tempDirectory).load(entries);
+            Assert.fail("expected IllegalStateException");
+        } catch (IllegalStateException ex) {
+            Assert.assertSame(failure, ex);
+        } finally {
+            store.close();
+        }
+        Assert.assertArrayEquals(new String[0], tempDirectory.list());
+        Assert.assertTrue(tempDirectory.delete());
+    }
+
+    private static Map.Entry<String, String> entry(String key, 
+            String value) {
+        return new AbstractMap.SimpleImmutableEntry<>(key, value);
+    }
+}
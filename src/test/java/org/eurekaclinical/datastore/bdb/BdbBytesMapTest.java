@@ -0,0 +1,107 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.arp.javautil.io.FileUtil;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class BdbBytesMapTest {
+
+    private BdbPersistentStoreFactory<Object, Object> factory;
+    private BdbBytesMap store;
+
+    @Before
+    public void setUp() throws IOException {
+        String envName = BdbUtil.uniqueEnvironment("bdb-bytes-test", null,
+                FileUtil.getTempDirectory());
+        this.factory = new BdbPersistentStoreFactory<>(envName);
+        this.store = this.factory.getBytesInstance("BdbBytesMapTest");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.store.close();
+        this.factory.closeAndRemoveAllDatabaseHandles();
+    }
+
+    @Test
+    public void testPutAndGet() {
+        Assert.assertNull(this.store.put(new byte[]{1, 2}, new byte[]{3}));
+        Assert.assertArrayEquals(new byte[]{3},
+                this.store.put(new byte[]{1, 2}, new byte[]{4, 5}));
+        Assert.assertArrayEquals(new byte[]{4, 5},
+                this.store.get(new byte[]{1, 2}));
+        Assert.assertTrue(this.store.containsKey(new byte[]{1, 2}));
+        Assert.assertNull(this.store.get(new byte[]{1}));
+        Assert.assertArrayEquals(new byte[]{4, 5},
+                this.store.remove(new byte[]{1, 2}));
+        Assert.assertTrue(this.store.isEmpty());
+    }
+
+    @Test
+    public void testByteBuffers() {
+        ByteBuffer key = ByteBuffer.wrap(new byte[]{0, 7, 8, 0}, 1, 2);
+        ByteBuffer value = ByteBuffer.allocateDirect(3);
+        value.put(new byte[]{9, 10, 11}).flip();
+        this.store.set(key, value);
+        Assert.assertEquals(1, key.position());
+        Assert.assertEquals(0, value.position());
+        Assert.assertArrayEquals(new byte[]{9, 10, 11},
+                this.store.get(new byte[]{7, 8}));
+        Assert.assertEquals(ByteBuffer.wrap(new byte[]{9, 10, 11}),
+                this.store.get(key));
+        Assert.assertTrue(this.store.delete(key));
+        Assert.assertFalse(this.store.delete(new byte[]{7, 8}));
+    }
+
+    @Test
+    public void testConfig() throws IOException {
+        try (BdbBytesMap configured = this.factory.getBytesInstance(
+                "BdbBytesMapConfigTest", new BdbStoreConfig<byte[], byte[]>()
+                        .setTransactional(true)
+                        .setKeyPrefixing(true))) {
+            configured.set(new byte[]{1, 2}, new byte[]{3});
+            Assert.assertArrayEquals(new byte[]{3}, 
+                    configured.get(new byte[]{1, 2}));
+            Assert.assertTrue(
+                    configured.getDatabase().getConfig().getTransactional());
+            Assert.assertTrue(
+                    configured.getDatabase().getConfig().getKeyPrefixing());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConfigRejectsBindings() throws IOException {
+        this.factory.getBytesInstance("BdbBytesMapBindingTest",
+                new BdbStoreConfig<byte[], byte[]>()
+                        .setValueBinding(BdbBindings.byteArrayBinding()));
+    }
+}
@@ -0,0 +1,113 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sleepycat.bind.tuple.StringBinding;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.arp.javautil.io.FileUtil;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class BdbCursorSpliteratorTest {
+
+    private BdbPersistentStoreFactory<String, String> factory;
+    private BdbMap<String, String> store;
+
+    @Before
+    public void setUp() throws IOException {
+        String envName = BdbUtil.uniqueEnvironment("bdb-spliterator-test",
+                null, FileUtil.getTempDirectory());
+        this.factory = new BdbPersistentStoreFactory<>(envName);
+        this.store = this.factory.getInstance("BdbCursorSpliteratorTest",
+                BdbBindings.stringBinding(), BdbBindings.stringBinding());
+        for (int i = 0; i < 2000; i++) {
+            this.store.put(String.format("k%05d", i), "v" + i);
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.store.close();
+        this.factory.closeAndRemoveAllDatabaseHandles();
+    }
+
+    @Test
+    public void testSplitRangesAreDisjointAndComplete() {
+        BdbCursorSpliterator<String> suffix = new BdbCursorSpliterator<>(
+                this.store.getDatabase(), null, 
+                (keyEntry, dataEntry) -> StringBinding.entryToString(keyEntry),
+                true);
+        Spliterator<String> prefix = suffix.trySplit();
+        Assert.assertNotNull(prefix);
+        Assert.assertEquals(Long.MAX_VALUE / 2, suffix.estimateSize());
+        List<String> keys = new ArrayList<>();
+        prefix.forEachRemaining(keys::add);
+        int prefixSize = keys.size();
+        suffix.forEachRemaining(keys::add);
+        Assert.assertTrue(prefixSize > 0 && prefixSize < 2000);
+        Assert.assertEquals(new ArrayList<>(this.store.keySet()), keys);
+        Assert.assertNull(suffix.trySplit());
+    }
+
+    @Test
+    public void testParallelStream() {
+        Assert.assertEquals(new ArrayList<>(this.store.keySet()),
+                this.store.keyStream().parallel()
+                        .collect(Collectors.toList()));
+        Assert.assertEquals(2000, this.store.stream().parallel()
+                .filter(e -> e.getValue().startsWith("v"))
+                .count());
+    }
+
+    @Test
+    public void testShortCircuitedParallelStreamClosesCursors() {
+        try (Stream<String> keys = this.store.keyStream().parallel()) {
+            Assert.assertTrue(keys.anyMatch(k -> k.endsWith("7")));
+        }
+        try (Stream<String> keys = this.store.keyStream().parallel()) {
+            Assert.assertEquals("k00000", keys.findFirst().get());
+        }
+        // Every split's cursor is closed, so the data store can be closed.
+        this.store.close();
+    }
+
+    @Test
+    public void testMidpoint() {
+        byte[] low = {1, 2, 3};
+        byte[] high = {1, 2, 5};
+        byte[] mid = BdbCursorSpliterator.midpoint(low, high);
+        Assert.assertTrue(BdbMap.compareKeys(mid, low) >= 0);
+        Assert.assertTrue(BdbMap.compareKeys(mid, high) < 0);
+        Assert.assertEquals(4, mid[2]);
+    }
+}
@@ -0,0 +1,252 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.je.DatabaseEntry;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import org.arp.javautil.io.FileUtil;
+import org.eurekaclinical.datastore.WriteBatch;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class BdbDedupMapTest {
+
+    private BdbPersistentStoreFactory<String, String> factory;
+    private BdbDedupMap<String, String> store;
+
+    @Before
+    public void setUp() throws IOException {
+        String envName = BdbUtil.uniqueEnvironment("bdb-dedup-test", null,
+                FileUtil.getTempDirectory());
+        this.factory = new BdbPersistentStoreFactory<>(envName);
+        this.store = (BdbDedupMap<String, String>) this.factory.getInstance(
+                "BdbDedupMapTest", new BdbStoreConfig<String, String>()
+                        .setKeyBinding(BdbBindings.stringBinding())
+                        .setValueBinding(BdbBindings.stringBinding())
+                        .setDeduplicating(true));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.store.close();
+        this.factory.closeAndRemoveAllDatabaseHandles();
+    }
+
+    @Test
+    public void testSharedValues() {
+        Assert.assertNull(this.store.put("a", "doc1"));
+        this.store.put("b", "doc1");
+        this.store.put("c", "doc2");
+        Assert.assertEquals(2, this.store.distinctValueCount());
+        Assert.assertEquals("doc1", this.store.get("b"));
+        Assert.assertEquals("doc1", this.store.getLazy("a").get());
+        Assert.assertEquals("doc2", 
+                this.store.getAll(Arrays.asList("c", "x")).get("c"));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("doc1", "doc2")),
+                new HashSet<>(this.store.values()));
+
+        Assert.assertEquals("doc1", this.store.put("a", "doc2"));
+        Assert.assertEquals(2, this.store.distinctValueCount());
+        Assert.assertTrue(this.store.containsValue("doc1"));
+        Assert.assertTrue(this.store.containsValue("doc2"));
+        Assert.assertFalse(this.store.containsValue("doc3"));
+        Assert.assertEquals("doc1", this.store.remove("b"));
+        Assert.assertFalse(this.store.containsValue("doc1"));
+        Assert.assertEquals(1, this.store.distinctValueCount());
+        Assert.assertNull(this.store.get("b"));
+
+        this.store.clear();
+        Assert.assertTrue(this.store.isEmpty());
+        Assert.assertEquals(0, this.store.distinctValueCount());
+    }
+
+    @Test
+    public void testWriteBatch() {
+        this.store.write(new WriteBatch<String, String>()
+                .put("a", "doc1").put("b", "doc1").put("c", "doc2")
+                .remove("c"));
+        Assert.assertEquals(2, this.store.size());
+        Assert.assertEquals(1, this.store.distinctValueCount());
+    }
+
+    @Test
+    public void testCompute() {
+        this.store.put("a", "doc1");
+        this.store.put("b", "doc1");
+        Assert.assertEquals("doc1+", this.store.compute("a", (k, v) -> v + "+"));
+        Assert.assertEquals(2, this.store.distinctValueCount());
+        Assert.assertEquals("doc1", this.store.putIfAbsent("b", "doc2"));
+        Assert.assertTrue(this.store.remove("b", "doc1"));
+        Assert.assertEquals(1, this.store.distinctValueCount());
+    }
+
+    @Test
+    public void testComputeWritesValuesChangedInPlace() throws IOException {
+        String envName = BdbUtil.uniqueEnvironment("bdb-dedup-test", null,
+                FileUtil.getTempDirectory());
+        BdbPersistentStoreFactory<String, byte[]> bytesFactory
+                = new BdbPersistentStoreFactory<>(envName);
+        try {
+            BdbDedupMap<String, byte[]> bytes 
+                    = (BdbDedupMap<String, byte[]>) bytesFactory.getInstance(
+                            "BdbDedupMapBytesTest", 
+                            new BdbStoreConfig<String, byte[]>()
+                                    .setKeyBinding(BdbBindings.stringBinding())
+                                    .setValueBinding(
+                                            BdbBindings.byteArrayBinding())
+                                    .setDeduplicating(true));
+            bytes.put("a", new byte[]{0});
+            bytes.put("b", new byte[]{0});
+            bytes.compute("a", (k, v) -> {
+                v[0]++;
+                return v;
+            });
+            Assert.assertArrayEquals(new byte[]{1}, bytes.get("a"));
+            Assert.assertEquals(2, bytes.distinctValueCount());
+            bytes.merge("b", new byte[]{1}, (v, w) -> {
+                v[0] += w[0];
+                return v;
+            });
+            Assert.assertArrayEquals(new byte[]{1}, bytes.get("b"));
+            Assert.assertEquals(1, bytes.distinctValueCount());
+            bytes.close();
+        } finally {
+            bytesFactory.closeAndRemoveAllDatabaseHandles();
+        }
+    }
+
+    @Test
+    public void testRemoveAllAndRange() {
+        this.store.put("a", "doc1");
+        this.store.put("b", "doc1");
+        this.store.put("c", "doc2");
+        this.store.put("d", "doc3");
+        Assert.assertEquals(1, this.store.removeAll(Arrays.asList("a", "x")));
+        Assert.assertEquals(2, this.store.removeRange("b", "d"));
+        Assert.assertEquals(1, this.store.distinctValueCount());
+        Assert.assertEquals("doc3", this.store.get("d"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testViewsAreReadOnly() {
+        this.store.put("a", "doc1");
+        this.store.keySet().clear();
+    }
+
+    @Test
+    public void testScanUnorderedWithPlainStore() throws IOException {
+        BdbMap<String, String> plain = this.factory.getInstance(
+                "BdbDedupMapPlainTest", BdbBindings.stringBinding(),
+                BdbBindings.stringBinding());
+        try {
+            plain.put("p1", "plain1");
+            plain.put("p2", "plain2");
+            this.store.put("d1", "doc");
+            this.store.put("d2", "doc");
+            Map<String, String> scanned = new HashMap<>();
+            this.factory.scanUnordered(Arrays.asList(plain, this.store),
+                    scanned::put);
+            Map<String, String> expected = new HashMap<>(plain);
+            expected.putAll(this.store);
+            Assert.assertEquals(expected, scanned);
+        } finally {
+            plain.close();
+        }
+    }
+
+    @Test
+    public void testStreamSkipsValuesRemovedDuringStream() 
+            throws IOException {
+        AtomicReference<BdbMap<String, String>> removing 
+                = new AtomicReference<>();
+        EntryBinding<String> stringBinding = BdbBindings.stringBinding();
+        EntryBinding<String> keyBinding = new EntryBinding<String>() {
+            @Override
+            public String entryToObject(DatabaseEntry entry) {
+                String key = stringBinding.entryToObject(entry);
+                if (key.equals("b")) {
+                    removing.get().remove(key);
+                }
+                return key;
+            }
+
+            @Override
+            public void objectToEntry(String key, DatabaseEntry entry) {
+                stringBinding.objectToEntry(key, entry);
+            }
+        };
+        try (BdbMap<String, String> removingStore = this.factory.getInstance(
+                "BdbDedupMapRemovingTest", new BdbStoreConfig<String, String>()
+                        .setKeyBinding(keyBinding)
+                        .setValueBinding(stringBinding)
+                        .setDeduplicating(true))) {
+            removing.set(removingStore);
+            removingStore.put("a", "doc1");
+            removingStore.put("b", "doc2");
+            removingStore.put("c", "doc3");
+            Map<String, String> streamed = new HashMap<>();
+            try (Stream<Map.Entry<String, String>> entries 
+                    = removingStore.stream()) {
+                entries.forEach(e -> streamed.put(e.getKey(), e.getValue()));
+            }
+            Map<String, String> expected = new HashMap<>();
+            expected.put("a", "doc1");
+            expected.put("c", "doc3");
+            Assert.assertEquals(expected, streamed);
+        }
+    }
+
+    @Test
+    public void testScanUnorderedSkipsValuesRemovedDuringScan() {
+        this.store.put("a", "doc1");
+        this.store.put("b", "doc2");
+        Map<String, String> scanned = new HashMap<>();
+        this.store.scanUnordered((key, value) -> {
+            if (scanned.isEmpty()) {
+                this.store.remove(key.equals("a") ? "b" : "a");
+            }
+            scanned.put(key, value);
+        });
+        Assert.assertEquals(new HashMap<>(this.store), scanned);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testScanUnorderedDoesNotWrapConsumerExceptions() {
+        this.store.put("a", "doc1");
+        this.store.scanUnordered((key, value) -> {
+            throw new IllegalStateException();
+        });
+    }
+}
@@ -0,0 +1,80 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.arp.javautil.io.FileUtil;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class BdbLongMapTest {
+
+    private BdbPersistentStoreFactory<Long, String> factory;
+    private BdbLongMap<String> store;
+
+    @Before
+    public void setUp() throws IOException {
+        String envName = BdbUtil.uniqueEnvironment("bdb-store-test", null,
+                FileUtil.getTempDirectory());
+        this.factory = new BdbPersistentStoreFactory<>(envName);
+        this.store = this.factory.getLongKeyInstance("BdbLongTest",
+                BdbBindings.stringBinding());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.store.close();
+        this.factory.closeAndRemoveAllDatabaseHandles();
+    }
+
+    @Test
+    public void testPutAndGet() {
+        Assert.assertNull(this.store.put(7L, "foo"));
+        Assert.assertEquals("foo", this.store.put(7L, "bar"));
+        Assert.assertEquals("bar", this.store.get(7L));
+        Assert.assertEquals("bar", this.store.get(Long.valueOf(7L)));
+        Assert.assertTrue(this.store.containsKey(7L));
+        Assert.assertEquals("bar", this.store.remove(7L));
+        Assert.assertFalse(this.store.containsKey(7L));
+        Assert.assertNull(this.store.get(7L));
+    }
+
+    @Test
+    public void testKeysAreInNumericOrder() {
+        for (long key : new long[]{42L, -1L, 0L, Long.MIN_VALUE, 
+                Long.MAX_VALUE, 300L}) {
+            this.store.put(key, "v");
+        }
+        List<Long> keys = new ArrayList<>(this.store.keySet());
+        Assert.assertEquals(Arrays.asList(Long.MIN_VALUE, -1L, 0L, 42L, 300L,
+                Long.MAX_VALUE), keys);
+    }
+}
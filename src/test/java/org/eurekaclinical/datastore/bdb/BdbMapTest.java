@@ -0,0 +1,276 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sleepycat.bind.tuple.StringBinding;
+import com.sleepycat.bind.tuple.TupleInput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.HashSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.arp.javautil.io.FileUtil;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class BdbMapTest {
+
+    private String envName;
+    private BdbPersistentStoreFactory<String, String> factory;
+    private BdbMap<String, String> store;
+
+    @Before
+    public void setUp() throws IOException {
+        this.envName = BdbUtil.uniqueEnvironment("bdb-store-test", null,
+                FileUtil.getTempDirectory());
+        this.factory = new BdbPersistentStoreFactory<>(this.envName);
+        this.store = this.factory.getInstance("BdbMapTest",
+                BdbBindings.utf8StringBinding(), BdbBindings.stringBinding());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.store.close();
+        this.factory.closeAndRemoveAllDatabaseHandles();
+    }
+
+    @Test
+    public void testGetLazy() {
+        this.store.put("foo", "bar");
+        Assert.assertNull(this.store.getLazy("baz"));
+        LazyValue<String> value = this.store.getLazy("foo");
+        Assert.assertArrayEquals(new byte[]{'b', 'a', 'r', 0},
+                value.getBytes());
+        Assert.assertEquals("bar", value.get());
+    }
+
+    @Test
+    public void testDeferredWrite() throws IOException {
+        BdbStoreConfig<String, String> config 
+                = new BdbStoreConfig<String, String>()
+                        .setKeyBinding(BdbBindings.stringBinding())
+                        .setValueBinding(BdbBindings.stringBinding())
+                        .setDeferredWrite(true);
+        try (BdbMap<String, String> deferred 
+                = this.factory.getInstance("deferred", config)) {
+            deferred.put("foo", "bar");
+            deferred.sync();
+            deferred.put("foo", "baz");
+        }
+        this.store.close();
+        this.factory.close();
+        this.factory = new BdbPersistentStoreFactory<>(this.envName);
+        this.store = this.factory.getInstance("BdbMapTest",
+                BdbBindings.utf8StringBinding(), BdbBindings.stringBinding());
+        try (BdbMap<String, String> deferred 
+                = this.factory.getInstance("deferred", config)) {
+            Assert.assertEquals("baz", deferred.get("foo"));
+        }
+    }
+
+    @Test
+    public void testConditionalWrites() {
+        Assert.assertNull(this.store.putIfAbsent("foo", "bar"));
+        Assert.assertEquals("bar", this.store.putIfAbsent("foo", "baz"));
+        Assert.assertFalse(this.store.replace("foo", "baz", "qux"));
+        Assert.assertTrue(this.store.replace("foo", "bar", "qux"));
+        Assert.assertNull(this.store.replace("missing", "x"));
+        Assert.assertFalse(this.store.containsKey("missing"));
+        Assert.assertFalse(this.store.remove("foo", "bar"));
+        Assert.assertTrue(this.store.remove("foo", "qux"));
+        Assert.assertEquals("v", this.store.computeIfAbsent("foo", k -> "v"));
+        Assert.assertEquals("foo=v",
+                this.store.computeIfPresent("foo", (k, v) -> k + "=" + v));
+        Assert.assertNull(this.store.compute("foo", (k, v) -> null));
+        Assert.assertTrue(this.store.isEmpty());
+    }
+
+    @Test
+    public void testComputeWritesValuesChangedInPlace() throws IOException {
+        String bytesEnvName = BdbUtil.uniqueEnvironment("bdb-store-test", 
+                null, FileUtil.getTempDirectory());
+        BdbPersistentStoreFactory<String, byte[]> bytesFactory
+                = new BdbPersistentStoreFactory<>(bytesEnvName);
+        try {
+            BdbMap<String, byte[]> bytes = bytesFactory.getInstance(
+                    "BdbMapBytesTest", BdbBindings.stringBinding(),
+                    BdbBindings.byteArrayBinding());
+            bytes.put("a", new byte[]{0});
+            bytes.compute("a", (k, v) -> {
+                v[0]++;
+                return v;
+            });
+            Assert.assertArrayEquals(new byte[]{1}, bytes.get("a"));
+            bytes.merge("a", new byte[]{5}, (v, w) -> {
+                v[0] += w[0];
+                return v;
+            });
+            Assert.assertArrayEquals(new byte[]{6}, bytes.get("a"));
+            bytes.computeIfPresent("a", (k, v) -> {
+                v[0]++;
+                return v;
+            });
+            Assert.assertArrayEquals(new byte[]{7}, bytes.get("a"));
+            bytes.close();
+        } finally {
+            bytesFactory.closeAndRemoveAllDatabaseHandles();
+        }
+    }
+
+    @Test
+    public void testConcurrentMerge() throws InterruptedException {
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 250; j++) {
+                    this.store.merge("counter", "1", (a, b) -> String.valueOf(
+                            Integer.parseInt(a) + Integer.parseInt(b)));
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals("1000", this.store.get("counter"));
+    }
+
+    @Test
+    public void testRemoveAllAndRange() {
+        for (String key : new String[]{"a", "b", "c", "d", "e", "f"}) {
+            this.store.put(key, key);
+        }
+        Assert.assertEquals(2, this.store.removeAll(
+                Arrays.asList("e", "a", "e", "z")));
+        Assert.assertEquals(2, this.store.removeRange("b", "d"));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("d", "f")),
+                new HashSet<>(this.store.keySet()));
+        Assert.assertEquals(2, this.store.removeRange(null, null));
+        Assert.assertTrue(this.store.isEmpty());
+    }
+
+    @Test
+    public void testGetAll() {
+        for (String key : new String[]{"b", "c", "d", "f", "h"}) {
+            this.store.put(key, key + key);
+        }
+        Map<String, String> expected = new HashMap<>();
+        expected.put("b", "bb");
+        expected.put("c", "cc");
+        expected.put("f", "ff");
+        expected.put("h", "hh");
+        Assert.assertEquals(expected, this.store.getAll(
+                Arrays.asList("h", "a", "c", "f", "b", "e", "c", "z")));
+        Assert.assertTrue(this.store.getAll(
+                Collections.<String>emptyList()).isEmpty());
+    }
+
+    @Test
+    public void testStreams() {
+        for (String key : new String[]{"c", "a", "e", "b", "d"}) {
+            this.store.put(key, key.toUpperCase());
+        }
+        Assert.assertEquals(Arrays.asList("a", "b", "c", "d", "e"),
+                this.store.keyStream().collect(Collectors.toList()));
+        Assert.assertEquals("ABCDE", 
+                this.store.valueStream().collect(Collectors.joining()));
+        Assert.assertEquals(Arrays.asList("bB", "dD"), this.store.stream()
+                .filter(e -> e.getKey().compareTo("a") > 0)
+                .filter(e -> e.getKey().compareTo("e") < 0)
+                .filter(e -> !e.getKey().equals("c"))
+                .map(e -> e.getKey() + e.getValue())
+                .collect(Collectors.toList()));
+        try (Stream<String> keys = this.store.keyStream()) {
+            Assert.assertEquals("a", keys.findFirst().get());
+        }
+        // The stream's cursor is closed, so the data store can be closed.
+        this.store.close();
+    }
+
+    @Test
+    public void testScanUnordered() {
+        for (int i = 0; i < 100; i++) {
+            this.store.put("k" + i, "v" + i);
+        }
+        Map<String, String> scanned = new HashMap<>();
+        this.store.scanUnordered(scanned::put);
+        Assert.assertEquals(new HashMap<>(this.store), scanned);
+    }
+
+    @Test
+    public void testKeySetReadsKeysOnly() throws IOException {
+        CountingBinding valueBinding = new CountingBinding();
+        BdbMap<String, String> keyStore = this.factory.getInstance(
+                "BdbMapKeyOnlyTest", BdbBindings.stringBinding(), 
+                valueBinding);
+        try {
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < 250; i++) {
+                String key = String.format("k%03d", i);
+                keyStore.put(key, "v" + i);
+                expected.add(key);
+            }
+            valueBinding.reads = 0;
+            Assert.assertEquals(expected, new ArrayList<>(keyStore.keySet()));
+            Assert.assertTrue(keyStore.containsKey("k100"));
+            Assert.assertFalse(keyStore.containsKey("k999"));
+            Assert.assertEquals(250L, keyStore.keyStream().count());
+            Assert.assertEquals(0, valueBinding.reads);
+
+            Iterator<String> itr = keyStore.keySet().iterator();
+            while (itr.hasNext()) {
+                if (itr.next().endsWith("0")) {
+                    itr.remove();
+                }
+            }
+            Assert.assertTrue(keyStore.keySet().remove("k001"));
+            Assert.assertFalse(keyStore.keySet().remove("k001"));
+            Assert.assertEquals(224, keyStore.size());
+            Assert.assertFalse(keyStore.containsKey("k100"));
+        } finally {
+            keyStore.close();
+        }
+    }
+
+    private static final class CountingBinding extends StringBinding {
+
+        private int reads;
+
+        @Override
+        public String entryToObject(TupleInput input) {
+            this.reads++;
+            return super.entryToObject(input);
+        }
+    }
+}
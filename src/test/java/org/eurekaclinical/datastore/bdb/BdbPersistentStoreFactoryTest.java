@@ -20,10 +20,13 @@ package org.eurekaclinical.datastore.bdb;
  * #L%
  */
 
+import com.sleepycat.je.Durability;
+import com.sleepycat.je.Environment;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 import org.arp.javautil.io.FileUtil;
 import org.eurekaclinical.datastore.DataStore;
 
@@ -45,4 +48,80 @@ public class BdbPersistentStoreFactoryTest {
             factory.closeAndRemoveAllDatabaseHandles();
         }
     }
+
+    @Test
+    public void testNewInstanceWithBindings() throws IOException {
+        String envName = BdbUtil.uniqueEnvironment("bdb-store-test", null,
+                FileUtil.getTempDirectory());
+        BdbPersistentStoreFactory<String, Long> factory
+                = new BdbPersistentStoreFactory<>(envName);
+        try {
+            DataStore<String, Long> store = factory.getInstance("BdbTest",
+                    BdbBindings.stringBinding(), BdbBindings.longBinding());
+            store.put("foo", 42L);
+            Assert.assertEquals(Long.valueOf(42L), store.get("foo"));
+            store.close();
+        } finally {
+            factory.closeAndRemoveAllDatabaseHandles();
+        }
+    }
+
+    @Test
+    public void testDurability() throws IOException {
+        String envName = BdbUtil.uniqueEnvironment("bdb-store-test", null,
+                FileUtil.getTempDirectory());
+        BdbPersistentStoreFactory<String, String> factory
+                = new BdbPersistentStoreFactory<>(envName);
+        factory.setDurability(Durability.COMMIT_NO_SYNC);
+        factory.setLogFlushInterval(1, TimeUnit.SECONDS);
+        try {
+            BdbMap<String, String> store = factory.getInstance("BdbTest",
+                    new BdbStoreConfig<String, String>()
+                            .setTransactional(true)
+                            .setDurability(Durability.COMMIT_SYNC));
+            store.put("foo", "bar");
+            Assert.assertEquals("bar", store.get("foo"));
+            Assert.assertEquals(Durability.COMMIT_NO_SYNC, store
+                    .getEnvironmentInfo().getEnvironment().getConfig()
+                    .getDurability());
+            Assert.assertTrue(fsyncsForPuts(store, 20) >= 20);
+            BdbMap<String, String> defaultStore = factory.getInstance(
+                    "BdbDefaultTest", new BdbStoreConfig<String, String>()
+                            .setTransactional(true));
+            Assert.assertTrue(fsyncsForPuts(defaultStore, 20) < 20);
+            defaultStore.close();
+            store.close();
+            try {
+                factory.setDurability(Durability.COMMIT_SYNC);
+                Assert.fail("expected IllegalStateException");
+            } catch (IllegalStateException ex) {
+                // expected
+            }
+        } finally {
+            factory.closeAndRemoveAllDatabaseHandles();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testDurabilityRequiresTransactional() throws IOException {
+        String envName = BdbUtil.uniqueEnvironment("bdb-store-test", null,
+                FileUtil.getTempDirectory());
+        BdbPersistentStoreFactory<String, String> factory
+                = new BdbPersistentStoreFactory<>(envName);
+        try {
+            factory.getInstance("BdbTest", new BdbStoreConfig<String, String>()
+                    .setDurability(Durability.COMMIT_NO_SYNC));
+        } finally {
+            factory.closeAndRemoveAllDatabaseHandles();
+        }
+    }
+
+    private static long fsyncsForPuts(BdbMap<String, String> store, int n) {
+        Environment env = store.getEnvironmentInfo().getEnvironment();
+        long before = env.getStats(null).getNFSyncs();
+        for (int i = 0; i < n; i++) {
+            store.put("key" + i, "value" + i);
+        }
+        return env.getStats(null).getNFSyncs() - before;
+    }
 }
@@ -0,0 +1,98 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import org.arp.javautil.io.FileUtil;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class BdbSortedMapTest {
+
+    private BdbPersistentStoreFactory<Long, String> factory;
+    private BdbSortedMap<Long, String> store;
+
+    @Before
+    public void setUp() throws IOException {
+        String envName = BdbUtil.uniqueEnvironment("bdb-sorted-test", null,
+                FileUtil.getTempDirectory());
+        this.factory = new BdbPersistentStoreFactory<>(envName);
+        this.store = this.factory.getSortedInstance("BdbSortedMapTest",
+                new BdbStoreConfig<Long, String>()
+                        .setKeyBinding(BdbBindings.longBinding())
+                        .setValueBinding(BdbBindings.stringBinding()));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.store.close();
+        this.factory.closeAndRemoveAllDatabaseHandles();
+    }
+
+    @Test
+    public void testRangeViews() {
+        for (long key : new long[]{30, -5, 10, 20, 0, 40}) {
+            this.store.put(key, "v" + key);
+        }
+        Assert.assertEquals(Long.valueOf(-5), this.store.firstKey());
+        Assert.assertEquals(Long.valueOf(40), this.store.lastKey());
+        Assert.assertEquals(Arrays.asList(10L, 20L),
+                new ArrayList<>(this.store.subMap(10L, 30L).keySet()));
+        Assert.assertEquals(Arrays.asList(20L, 30L), new ArrayList<>(
+                this.store.subMap(10L, false, 30L, true).keySet()));
+        Assert.assertEquals(Arrays.asList(-5L, 0L),
+                new ArrayList<>(this.store.headMap(10L).keySet()));
+        Assert.assertEquals(Arrays.asList(-5L, 0L, 10L),
+                new ArrayList<>(this.store.headMap(10L, true).keySet()));
+        Assert.assertEquals(Arrays.asList("v30", "v40"),
+                new ArrayList<>(this.store.tailMap(30L).values()));
+        Assert.assertEquals(Arrays.asList(40L),
+                new ArrayList<>(this.store.tailMap(30L, false).keySet()));
+
+        SortedMap<Long, String> window = this.store.subMap(0L, 20L);
+        window.remove(10L);
+        Assert.assertEquals(5, this.store.size());
+        Assert.assertEquals(Long.valueOf(20), 
+                this.store.tailMap(1L).firstKey());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testFirstKeyOfEmptyStore() {
+        this.store.firstKey();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsSerialKeys() throws IOException {
+        this.factory.getSortedInstance("BdbSortedMapSerialTest",
+                new BdbStoreConfig<>());
+    }
+}
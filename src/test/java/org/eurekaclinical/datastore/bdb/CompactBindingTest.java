@@ -0,0 +1,112 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.je.DatabaseEntry;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.arp.javautil.io.FileUtil;
+import org.eurekaclinical.datastore.DataStore;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class CompactBindingTest {
+
+    @Test
+    public void testRoundTripJdkTypes() {
+        EntryBinding<Object> binding = new CompactBinding<>(null, null);
+        Map<String, Object> map = new HashMap<>();
+        map.put("list", new ArrayList<>(Arrays.asList(1, 2L, "three", null)));
+        map.put("set", new LinkedHashSet<>(Arrays.asList(true, 'c', 1.5)));
+        for (Object value : Arrays.asList("foo", 42, -7L, 2.5f, (short) 3,
+                (byte) 4, Boolean.FALSE, new Date(1500000000000L),
+                UUID.randomUUID(), map, null)) {
+            Assert.assertEquals(value, roundTrip(binding, value));
+        }
+        Assert.assertArrayEquals(new byte[]{1, 2},
+                (byte[]) roundTrip(binding, new byte[]{1, 2}));
+    }
+
+    @Test
+    public void testLongIsSmall() {
+        EntryBinding<Object> binding = new CompactBinding<>(null, null);
+        DatabaseEntry entry = new DatabaseEntry();
+        binding.objectToEntry(100L, entry);
+        Assert.assertEquals(2, entry.getSize());
+    }
+
+    @Test
+    public void testRegisteredClass() {
+        CompactClassRegistry registry = new CompactClassRegistry()
+                .register(1, SampleValue.class);
+        EntryBinding<Object> binding = new CompactBinding<>(registry, null);
+        List<SampleValue> values = new ArrayList<>(Arrays.asList(
+                SampleValue.sample(1L), SampleValue.sample(2L)));
+        Assert.assertEquals(values, roundTrip(binding, values));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownClassWithoutFallback() {
+        EntryBinding<Object> binding = new CompactBinding<>(null, null);
+        binding.objectToEntry(BigInteger.TEN, new DatabaseEntry());
+    }
+
+    @Test
+    public void testFactoryDefault() throws IOException {
+        String envName = BdbUtil.uniqueEnvironment("bdb-store-test", null,
+                FileUtil.getTempDirectory());
+        BdbPersistentStoreFactory<String, Object> factory
+                = new BdbPersistentStoreFactory<>(envName,
+                        new CompactClassRegistry().register(1,
+                                SampleValue.class));
+        try {
+            DataStore<String, Object> store = factory.getInstance("BdbTest");
+            store.put("sample", SampleValue.sample(1L));
+            store.put("fallback", BigInteger.TEN);
+            Assert.assertEquals(SampleValue.sample(1L), store.get("sample"));
+            Assert.assertEquals(BigInteger.TEN, store.get("fallback"));
+            store.close();
+        } finally {
+            factory.closeAndRemoveAllDatabaseHandles();
+        }
+    }
+
+    private static Object roundTrip(EntryBinding<Object> binding,
+            Object value) {
+        DatabaseEntry entry = new DatabaseEntry();
+        binding.objectToEntry(value, entry);
+        return binding.entryToObject(entry);
+    }
+}
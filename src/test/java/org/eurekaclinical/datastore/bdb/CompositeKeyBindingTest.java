@@ -0,0 +1,88 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.sleepycat.je.DatabaseEntry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import org.arp.javautil.io.FileUtil;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class CompositeKeyBindingTest {
+
+    private BdbPersistentStoreFactory<CompositeKey, String> factory;
+    private BdbMap<CompositeKey, String> store;
+
+    @Before
+    public void setUp() throws IOException {
+        String envName = BdbUtil.uniqueEnvironment("bdb-composite-test", null,
+                FileUtil.getTempDirectory());
+        this.factory = new BdbPersistentStoreFactory<>(envName);
+        this.store = this.factory.getInstance("CompositeKeyBindingTest",
+                new CompositeKeyBinding(String.class, Long.class, Date.class),
+                BdbBindings.stringBinding());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.store.close();
+        this.factory.closeAndRemoveAllDatabaseHandles();
+    }
+
+    @Test
+    public void testKeyPrefixing() {
+        Assert.assertTrue(
+                this.store.getDatabase().getConfig().getKeyPrefixing());
+    }
+
+    @Test
+    public void testOrder() {
+        CompositeKey k1 = CompositeKey.of("p1", -5L, new Date(10));
+        CompositeKey k2 = CompositeKey.of("p1", 2L, new Date(1));
+        CompositeKey k3 = CompositeKey.of("p1", 2L, new Date(2));
+        CompositeKey k4 = CompositeKey.of("p10", -9L, new Date(0));
+        CompositeKey k5 = CompositeKey.of("p2", 0L);
+        for (CompositeKey key : Arrays.asList(k5, k3, k1, k4, k2)) {
+            this.store.put(key, key.toString());
+        }
+        List<CompositeKey> actual = new ArrayList<>(this.store.keySet());
+        Assert.assertEquals(Arrays.asList(k1, k2, k3, k4, k5), actual);
+        Assert.assertEquals(k3.toString(), this.store.get(k3));
+        Assert.assertEquals(new Date(2), actual.get(2).get(2, Date.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongComponentType() {
+        new CompositeKeyBinding(String.class, Long.class).objectToEntry(
+                CompositeKey.of("p1", "e1"), new DatabaseEntry());
+    }
+}
@@ -0,0 +1,232 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.bind.tuple.TupleOutput;
+import com.sleepycat.je.DatabaseEntry;
+import java.io.IOError;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+import org.arp.javautil.io.FileUtil;
+import org.eurekaclinical.datastore.DataStore;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class CompressingBindingTest {
+
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(0L);
+        for (CompressionAlgorithm algorithm : CompressionAlgorithm.values()) {
+            for (byte[] dictionary : new byte[][]{null, 
+                    CompressingBinding.trainDictionary(samples(50), 4096)}) {
+                EntryBinding<byte[]> binding = new CompressingBinding<>(
+                        BdbBindings.byteArrayBinding(), algorithm, 16,
+                        dictionary);
+                for (byte[] value : samples(20)) {
+                    Assert.assertArrayEquals(value, roundTrip(binding, value));
+                }
+                byte[] noise = new byte[5000];
+                random.nextBytes(noise);
+                Assert.assertArrayEquals(noise, roundTrip(binding, noise));
+                byte[] run = new byte[70000];
+                Assert.assertArrayEquals(run, roundTrip(binding, run));
+                Assert.assertArrayEquals(new byte[3],
+                        roundTrip(binding, new byte[3]));
+            }
+        }
+    }
+
+    @Test
+    public void testCompresses() {
+        byte[] value = new byte[0];
+        for (byte[] sample : samples(10)) {
+            value = concat(value, sample);
+        }
+        for (CompressionAlgorithm algorithm : CompressionAlgorithm.values()) {
+            EntryBinding<byte[]> binding = new CompressingBinding<>(
+                    BdbBindings.byteArrayBinding(), algorithm);
+            DatabaseEntry entry = new DatabaseEntry();
+            binding.objectToEntry(value, entry);
+            Assert.assertTrue(algorithm.name(), 
+                    entry.getSize() < value.length / 2);
+        }
+    }
+
+    @Test
+    public void testDictionaryImprovesCompression() {
+        byte[] dictionary = CompressingBinding.trainDictionary(samples(50),
+                4096);
+        byte[] value = samples(51).get(50);
+        for (CompressionAlgorithm algorithm : CompressionAlgorithm.values()) {
+            Assert.assertTrue(algorithm.name(), compressedSize(
+                    new CompressingBinding<>(BdbBindings.byteArrayBinding(),
+                            algorithm, 0, dictionary), value)
+                    < compressedSize(new CompressingBinding<>(
+                            BdbBindings.byteArrayBinding(), algorithm, 0, 
+                            null), value));
+        }
+    }
+
+    @Test(expected = IOError.class)
+    public void testWrongDictionary() {
+        byte[] dictionary = CompressingBinding.trainDictionary(samples(50),
+                4096);
+        byte[] value = samples(1).get(0);
+        DatabaseEntry entry = new DatabaseEntry();
+        new CompressingBinding<>(BdbBindings.byteArrayBinding(),
+                CompressionAlgorithm.LZ, 0, dictionary)
+                .objectToEntry(value, entry);
+        new CompressingBinding<>(BdbBindings.byteArrayBinding(),
+                CompressionAlgorithm.LZ).entryToObject(entry);
+    }
+
+    @Test(expected = IOError.class)
+    public void testCorruptValue() {
+        byte[] value = samples(1).get(0);
+        DatabaseEntry entry = new DatabaseEntry();
+        new CompressingBinding<>(BdbBindings.byteArrayBinding(),
+                CompressionAlgorithm.LZ, 0, null).objectToEntry(value, entry);
+        byte[] corrupt = Arrays.copyOf(entry.getData(), entry.getSize() / 2);
+        new CompressingBinding<>(BdbBindings.byteArrayBinding(),
+                CompressionAlgorithm.LZ).entryToObject(
+                        new DatabaseEntry(corrupt));
+    }
+
+    @Test(expected = IOError.class, timeout = 10000)
+    public void testMissingDictionary() {
+        byte[] dictionary = CompressingBinding.trainDictionary(samples(50),
+                4096);
+        DatabaseEntry entry = deflatedEntry(samples(1).get(0), dictionary,
+                null);
+        new CompressingBinding<>(BdbBindings.byteArrayBinding(),
+                CompressionAlgorithm.DEFLATE).entryToObject(entry);
+    }
+
+    @Test(expected = IOError.class, timeout = 10000)
+    public void testMismatchedDeflateDictionary() {
+        byte[] dictionary = CompressingBinding.trainDictionary(samples(50),
+                4096);
+        byte[] other = CompressingBinding.trainDictionary(samples(20), 4096);
+        DatabaseEntry entry = deflatedEntry(samples(1).get(0), dictionary,
+                other);
+        new CompressingBinding<>(BdbBindings.byteArrayBinding(),
+                CompressionAlgorithm.DEFLATE, 0, other).entryToObject(entry);
+    }
+
+    @Test
+    public void testCompressedStore() throws IOException {
+        String envName = BdbUtil.uniqueEnvironment("bdb-store-test", null,
+                FileUtil.getTempDirectory());
+        BdbPersistentStoreFactory<String, String> factory
+                = new BdbPersistentStoreFactory<>(envName);
+        try {
+            DataStore<String, String> store = factory.getInstance("BdbTest",
+                    new BdbStoreConfig<String, String>()
+                            .setCompressionAlgorithm(
+                                    CompressionAlgorithm.DEFLATE));
+            String value = new String(samples(1).get(0), "UTF-8");
+            store.put("foo", value);
+            Assert.assertEquals(value, store.get("foo"));
+            store.close();
+        } finally {
+            factory.closeAndRemoveAllDatabaseHandles();
+        }
+    }
+
+    private static List<byte[]> samples(int n) {
+        Random random = new Random(n);
+        List<byte[]> result = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            StringBuilder b = new StringBuilder();
+            b.append("<encounter id=\"").append(random.nextInt(100000))
+                    .append("\"><patient mrn=\"")
+                    .append(random.nextInt(1000000))
+                    .append("\"/><observation code=\"LOINC:")
+                    .append(random.nextInt(10000))
+                    .append("\" units=\"mg/dL\" value=\"")
+                    .append(random.nextDouble())
+                    .append("\"/><status>final</status></encounter>");
+            result.add(b.toString().getBytes());
+        }
+        return result;
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = new byte[a.length + b.length];
+        System.arraycopy(a, 0, result, 0, a.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    private static int compressedSize(EntryBinding<byte[]> binding,
+            byte[] value) {
+        DatabaseEntry entry = new DatabaseEntry();
+        binding.objectToEntry(value, entry);
+        return entry.getSize();
+    }
+
+    /**
+     * Writes a deflated value compressed with <code>dictionary</code>, with a
+     * header claiming <code>headerDictionary</code>.
+     */
+    private static DatabaseEntry deflatedEntry(byte[] value,
+            byte[] dictionary, byte[] headerDictionary) {
+        Deflater deflater = new Deflater();
+        deflater.setDictionary(dictionary);
+        deflater.setInput(value);
+        deflater.finish();
+        byte[] compressed = new byte[value.length * 2 + 64];
+        int length = deflater.deflate(compressed);
+        deflater.end();
+        TupleOutput output = new TupleOutput();
+        if (headerDictionary != null) {
+            Adler32 adler32 = new Adler32();
+            adler32.update(headerDictionary);
+            output.writeFast(0x81);
+            output.writePackedInt(value.length);
+            output.writeInt((int) adler32.getValue());
+        } else {
+            output.writeFast(0x01);
+            output.writePackedInt(value.length);
+        }
+        output.writeFast(compressed, 0, length);
+        return new DatabaseEntry(output.toByteArray());
+    }
+
+    private static byte[] roundTrip(EntryBinding<byte[]> binding,
+            byte[] value) {
+        DatabaseEntry entry = new DatabaseEntry();
+        binding.objectToEntry(value, entry);
+        return binding.entryToObject(entry);
+    }
+}
@@ -0,0 +1,99 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import org.arp.javautil.io.FileUtil;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class InTransactionTest {
+
+    private BdbPersistentStoreFactory<String, String> factory;
+    private BdbMap<String, String> accounts;
+    private BdbMap<String, String> audit;
+    private BdbMap<String, String> scratch;
+
+    @Before
+    public void setUp() throws IOException {
+        String envName = BdbUtil.uniqueEnvironment("bdb-txn-test", null,
+                FileUtil.getTempDirectory());
+        this.factory = new BdbPersistentStoreFactory<>(envName);
+        this.accounts = this.factory.getInstance("accounts", config(true));
+        this.audit = this.factory.getInstance("audit", config(true));
+        this.scratch = this.factory.getInstance("scratch", config(false));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.accounts.close();
+        this.audit.close();
+        this.scratch.close();
+        this.factory.closeAndRemoveAllDatabaseHandles();
+    }
+
+    @Test
+    public void testCommit() throws IOException {
+        String result = this.factory.inTransaction(txn -> {
+            this.accounts.put("a", "10");
+            this.audit.put("1", "a=10");
+            this.scratch.put("x", "y");
+            return this.factory.inTransaction(inner -> {
+                Assert.assertSame(txn, inner);
+                return this.accounts.get("a");
+            });
+        });
+        Assert.assertEquals("10", result);
+        Assert.assertEquals("a=10", this.audit.get("1"));
+        Assert.assertEquals("y", this.scratch.get("x"));
+    }
+
+    @Test
+    public void testAbort() {
+        try {
+            this.factory.inTransaction(txn -> {
+                this.accounts.put("a", "10");
+                this.audit.put("1", "a=10");
+                throw new IOException("failed");
+            });
+            Assert.fail("expected IOException");
+        } catch (IOException ex) {
+            Assert.assertEquals("failed", ex.getMessage());
+        }
+        Assert.assertTrue(this.accounts.isEmpty());
+        Assert.assertTrue(this.audit.isEmpty());
+    }
+
+    private static BdbStoreConfig<String, String> config(
+            boolean transactional) {
+        return new BdbStoreConfig<String, String>()
+                .setKeyBinding(BdbBindings.stringBinding())
+                .setValueBinding(BdbBindings.stringBinding())
+                .setTransactional(transactional);
+    }
+}
@@ -0,0 +1,127 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * A value class with a generated tuple binding, used by tests and
+ * benchmarks.
+ *
+ * @author Andrew Post
+ */
+@TupleBound
+public class SampleValue implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Kind {
+        INPATIENT, OUTPATIENT
+    }
+
+    @TupleBound
+    public static class Code implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        String system;
+        String value;
+
+        public Code() {
+        }
+
+        Code(String system, String value) {
+            this.system = system;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Code)) {
+                return false;
+            }
+            Code other = (Code) obj;
+            return Objects.equals(this.system, other.system)
+                    && Objects.equals(this.value, other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.system, this.value);
+        }
+    }
+
+    long patientId;
+    int encounterNumber;
+    boolean active;
+    double score;
+    String name;
+    Integer age;
+    Date admitted;
+    Kind kind;
+    Code diagnosis;
+    byte[] notes;
+    transient String cached;
+
+    public SampleValue() {
+    }
+
+    static SampleValue sample(long patientId) {
+        SampleValue result = new SampleValue();
+        result.patientId = patientId;
+        result.encounterNumber = 3;
+        result.active = true;
+        result.score = 0.75;
+        result.name = "Encounter " + patientId;
+        result.age = 64;
+        result.admitted = new Date(1500000000000L);
+        result.kind = Kind.INPATIENT;
+        result.diagnosis = new Code("ICD10", "E11.9");
+        result.notes = new byte[]{1, 2, 3};
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof SampleValue)) {
+            return false;
+        }
+        SampleValue other = (SampleValue) obj;
+        return this.patientId == other.patientId
+                && this.encounterNumber == other.encounterNumber
+                && this.active == other.active
+                && Double.compare(this.score, other.score) == 0
+                && Objects.equals(this.name, other.name)
+                && Objects.equals(this.age, other.age)
+                && Objects.equals(this.admitted, other.admitted)
+                && this.kind == other.kind
+                && Objects.equals(this.diagnosis, other.diagnosis)
+                && Arrays.equals(this.notes, other.notes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(this.patientId);
+    }
+}
@@ -0,0 +1,137 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.bind.serial.SerialBinding;
+import com.sleepycat.bind.serial.StoredClassCatalog;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseConfig;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.EnvironmentConfig;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.arp.javautil.io.FileUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares a generated tuple binding with the default serial binding. Run
+ * it with
+ * <code>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.eurekaclinical.datastore.bdb.TupleBindingBenchmark</code>.
+ * The serialized size of the sample value for each binding is printed
+ * during setup.
+ *
+ * @author Andrew Post
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TupleBindingBenchmark {
+
+    private Environment env;
+    private StoredClassCatalog catalog;
+    private EntryBinding<SampleValue> serialBinding;
+    private EntryBinding<SampleValue> tupleBinding;
+    private SampleValue value;
+    private DatabaseEntry serialEntry;
+    private DatabaseEntry tupleEntry;
+
+    @Setup
+    public void setUp() throws IOException {
+        File envDir = new File(BdbUtil.uniqueEnvironment("bdb-benchmark",
+                null, FileUtil.getTempDirectory()));
+        envDir.mkdirs();
+        EnvironmentConfig envConfig = new EnvironmentConfig();
+        envConfig.setAllowCreate(true);
+        this.env = new Environment(envDir, envConfig);
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setAllowCreate(true);
+        Database catalogDb = this.env.openDatabase(null, "catalog", dbConfig);
+        this.catalog = new StoredClassCatalog(catalogDb);
+        this.serialBinding = new SerialBinding<>(this.catalog,
+                SampleValue.class);
+        this.tupleBinding = BdbBindings.forClass(SampleValue.class);
+        this.value = SampleValue.sample(12345L);
+        this.serialEntry = new DatabaseEntry();
+        this.serialBinding.objectToEntry(this.value, this.serialEntry);
+        this.tupleEntry = new DatabaseEntry();
+        this.tupleBinding.objectToEntry(this.value, this.tupleEntry);
+        System.out.println("Serial binding size: "
+                + this.serialEntry.getSize() + " bytes; tuple binding size: "
+                + this.tupleEntry.getSize() + " bytes");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        File home = this.env.getHome();
+        this.catalog.close();
+        this.env.close();
+        FileUtil.deleteDirectory(home);
+    }
+
+    @Benchmark
+    public DatabaseEntry serialWrite() {
+        DatabaseEntry entry = new DatabaseEntry();
+        this.serialBinding.objectToEntry(this.value, entry);
+        return entry;
+    }
+
+    @Benchmark
+    public DatabaseEntry tupleWrite() {
+        DatabaseEntry entry = new DatabaseEntry();
+        this.tupleBinding.objectToEntry(this.value, entry);
+        return entry;
+    }
+
+    @Benchmark
+    public SampleValue serialRead() {
+        return this.serialBinding.entryToObject(this.serialEntry);
+    }
+
+    @Benchmark
+    public SampleValue tupleRead() {
+        return this.tupleBinding.entryToObject(this.tupleEntry);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TupleBindingBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
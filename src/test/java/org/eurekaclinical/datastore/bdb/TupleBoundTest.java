@@ -0,0 +1,83 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.je.DatabaseEntry;
+import java.io.IOException;
+import org.arp.javautil.io.FileUtil;
+import org.eurekaclinical.datastore.DataStore;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class TupleBoundTest {
+
+    @Test
+    public void testForClassFindsGeneratedBinding() {
+        EntryBinding<SampleValue> binding
+                = BdbBindings.forClass(SampleValue.class);
+        Assert.assertTrue(binding instanceof SampleValueTupleBinding);
+        Assert.assertTrue(BdbBindings.forClass(SampleValue.Code.class)
+                instanceof SampleValue_CodeTupleBinding);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        EntryBinding<SampleValue> binding
+                = BdbBindings.forClass(SampleValue.class);
+        SampleValue value = SampleValue.sample(1L);
+        DatabaseEntry entry = new DatabaseEntry();
+        binding.objectToEntry(value, entry);
+        Assert.assertEquals(value, binding.entryToObject(entry));
+    }
+
+    @Test
+    public void testRoundTripNulls() {
+        EntryBinding<SampleValue> binding
+                = BdbBindings.forClass(SampleValue.class);
+        SampleValue value = new SampleValue();
+        DatabaseEntry entry = new DatabaseEntry();
+        binding.objectToEntry(value, entry);
+        Assert.assertEquals(value, binding.entryToObject(entry));
+    }
+
+    @Test
+    public void testFactoryUsesGeneratedBinding() throws IOException {
+        String envName = BdbUtil.uniqueEnvironment("bdb-store-test", null,
+                FileUtil.getTempDirectory());
+        BdbPersistentStoreFactory<Long, SampleValue> factory
+                = new BdbPersistentStoreFactory<>(envName);
+        try {
+            DataStore<Long, SampleValue> store = factory.getInstance(
+                    "BdbTest", Long.class, SampleValue.class);
+            store.put(1L, SampleValue.sample(1L));
+            Assert.assertEquals(SampleValue.sample(1L), store.get(1L));
+            store.close();
+        } finally {
+            factory.closeAndRemoveAllDatabaseHandles();
+        }
+    }
+}
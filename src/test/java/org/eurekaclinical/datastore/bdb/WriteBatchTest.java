@@ -0,0 +1,153 @@
+package org.eurekaclinical.datastore.bdb;
+
+/*-
+ * #%L
+ * Datastore
+ * %%
+ * Copyright (C) 2016 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.sleepycat.bind.tuple.StringBinding;
+import com.sleepycat.bind.tuple.TupleOutput;
+import java.io.IOError;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import org.arp.javautil.io.FileUtil;
+import org.eurekaclinical.datastore.WriteBatch;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class WriteBatchTest {
+
+    private BdbPersistentStoreFactory<String, String> factory;
+    private BdbMap<String, String> store;
+
+    @Before
+    public void setUp() throws IOException {
+        String envName = BdbUtil.uniqueEnvironment("bdb-batch-test", null,
+                FileUtil.getTempDirectory());
+        this.factory = new BdbPersistentStoreFactory<>(envName);
+        this.store = this.factory.getInstance("WriteBatchTest",
+                new BdbStoreConfig<String, String>()
+                        .setKeyBinding(BdbBindings.stringBinding())
+                        .setValueBinding(new RejectingBinding())
+                        .setTransactional(true)
+                        .setBatchCommitSize(10));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.store.close();
+        this.factory.closeAndRemoveAllDatabaseHandles();
+    }
+
+    @Test
+    public void testWrite() {
+        WriteBatch<String, String> batch = new WriteBatch<>();
+        for (int i = 0; i < 25; i++) {
+            batch.put("k" + i, "v" + i);
+        }
+        batch.remove("k3").put("k4", "w4");
+        this.store.write(batch);
+        Assert.assertEquals(24, this.store.size());
+        Assert.assertNull(this.store.get("k3"));
+        Assert.assertEquals("w4", this.store.get("k4"));
+    }
+
+    @Test
+    public void testPutAll() {
+        Map<String, String> map = new HashMap<>();
+        for (int i = 0; i < 15; i++) {
+            map.put("k" + i, "v" + i);
+        }
+        this.store.putAll(map);
+        Assert.assertEquals(map, new HashMap<>(this.store));
+    }
+
+    @Test
+    public void testFailedChunkIsRolledBack() {
+        WriteBatch<String, String> batch = new WriteBatch<>();
+        for (int i = 0; i < 15; i++) {
+            batch.put("k" + i, i == 12 ? RejectingBinding.REJECTED : "v");
+        }
+        try {
+            this.store.write(batch);
+            Assert.fail("expected IOError");
+        } catch (IOError err) {
+            // expected
+        }
+        Assert.assertEquals(10, this.store.size());
+    }
+
+    @Test
+    public void testParallelEncoding() throws IOException {
+        BdbMap<String, String> parallelStore = this.factory.getInstance(
+                "WriteBatchParallelTest", new BdbStoreConfig<String, String>()
+                        .setKeyBinding(BdbBindings.stringBinding())
+                        .setValueBinding(new RejectingBinding())
+                        .setTransactional(true)
+                        .setBatchCommitSize(10)
+                        .setEncodingThreads(4));
+        try {
+            WriteBatch<String, String> batch = new WriteBatch<>();
+            for (int i = 0; i < 95; i++) {
+                batch.put("k" + i, "v" + i);
+            }
+            batch.remove("k3").put("k4", "w4");
+            parallelStore.write(batch);
+            Assert.assertEquals(94, parallelStore.size());
+            Assert.assertNull(parallelStore.get("k3"));
+            Assert.assertEquals("w4", parallelStore.get("k4"));
+            Assert.assertEquals("v94", parallelStore.get("k94"));
+
+            parallelStore.clear();
+            batch.clear();
+            for (int i = 0; i < 35; i++) {
+                batch.put("k" + i, i == 27 ? RejectingBinding.REJECTED : "v");
+            }
+            try {
+                parallelStore.write(batch);
+                Assert.fail("expected IOError");
+            } catch (IOError err) {
+                // expected
+            }
+            Assert.assertEquals(20, parallelStore.size());
+        } finally {
+            parallelStore.close();
+        }
+    }
+
+    private static final class RejectingBinding extends StringBinding {
+
+        static final String REJECTED = "rejected";
+
+        @Override
+        public void objectToEntry(String object, TupleOutput output) {
+            if (REJECTED.equals(object)) {
+                throw new IllegalArgumentException(object);
+            }
+            super.objectToEntry(object, output);
+        }
+    }
+}